@@ -0,0 +1,131 @@
+package shvalieva.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import shvalieva.entity.RoomReservationLock;
+import shvalieva.outbox.OutboxEventRepository;
+import shvalieva.outbox.OutboxWriter;
+import shvalieva.repository.RoomReservationLockRepository;
+import shvalieva.service.HoldExpiryReaper;
+import shvalieva.service.HotelService;
+import shvalieva.service.RoomAvailabilityIndex;
+import shvalieva.service.RoomLockManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Проверка конфликтов в HotelService.holdRoom при растущей истории удержаний номера.
+ * Репозиторий — заглушка, диапазонный запрос в ней — линейный просмотр истории (как скан без индекса в БД).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AvailabilityBenchmark {
+    private static final long ROOM_ID = 1L;
+    // История начинается сегодня: первые ~240 удержаний попадают в окно календаря (730 суток)
+    private static final LocalDate BASE = LocalDate.now();
+
+    @Param({"10", "1000", "100000"})
+    public int historySize;
+
+    private final AtomicLong requestSeq = new AtomicLong();
+    private List<RoomReservationLock> history;
+    private RoomAvailabilityIndex index;
+    private HoldExpiryReaper holdExpiry;
+    private HotelService hotelService;
+    private LocalDate freeStart;
+    private LocalDate busyStart;
+
+    @Setup
+    public void setUp() {
+        history = new ArrayList<>(historySize);
+        for (int i = 0; i < historySize; i++) {
+            RoomReservationLock lock = new RoomReservationLock();
+            lock.setRequestId("h-" + i);
+            lock.setRoomId(ROOM_ID);
+            lock.setStartDate(BASE.plusDays(3L * i));
+            lock.setEndDate(BASE.plusDays(3L * i + 1));
+            lock.setStatus(RoomReservationLock.Status.CONFIRMED);
+            history.add(lock);
+        }
+        freeStart = BASE.plusDays(3L * historySize + 10);
+        busyStart = BASE.plusDays(3L * (historySize / 2));
+
+        RoomReservationLockRepository lockRepository = Stubs.repository(RoomReservationLockRepository.class, Map.of(
+                "findByStatusIn", args -> history,
+                "findByRequestId", args -> Optional.empty(),
+                "findArchivedByRequestId", args -> Optional.empty(),
+                "findActiveOverlapping", args -> {
+                    LocalDate start = (LocalDate) args[1];
+                    LocalDate end = (LocalDate) args[2];
+                    return history.stream()
+                            .filter(l -> !l.getStartDate().isAfter(end) && !l.getEndDate().isBefore(start))
+                            .toList();
+                },
+                "save", args -> {
+                    RoomReservationLock lock = (RoomReservationLock) args[0];
+                    lock.setId(requestSeq.get());
+                    return lock;
+                }
+        ));
+        index = new RoomAvailabilityIndex(lockRepository, 730);
+        index.warmUp();
+        RoomLockManager roomLocks = new RoomLockManager(new SimpleMeterRegistry(), 64, 2000);
+        // Запись в outbox — сериализация события, сохранение в заглушке бесплатное
+        OutboxWriter outbox = new OutboxWriter(
+                Stubs.repository(OutboxEventRepository.class, Map.of("save", args -> args[0])),
+                new ObjectMapper().registerModule(new JavaTimeModule()));
+        holdExpiry = new HoldExpiryReaper(lockRepository, index, roomLocks, outbox, null, new SimpleMeterRegistry(),
+                900, 1000, 500);
+        hotelService = new HotelService(null, null, lockRepository, index, roomLocks, null, null, holdExpiry, outbox,
+                null);
+    }
+
+    @Benchmark
+    public boolean indexFreeRange() {
+        return index.mayConflict(ROOM_ID, freeStart, freeStart.plusDays(2));
+    }
+
+    @Benchmark
+    public boolean indexBusyRange() {
+        return index.mayConflict(ROOM_ID, busyStart, busyStart.plusDays(2));
+    }
+
+    // Двухнедельный диапазон внутри окна календаря: проверка по битовой карте
+    @Benchmark
+    public boolean indexCalendarRange() {
+        return index.mayConflict(ROOM_ID, BASE.plusDays(100), BASE.plusDays(114));
+    }
+
+    // Полный holdRoom на свободные даты: ответ индекса без обращения к репозиторию.
+    // Удержание сразу снимается из индекса и колеса сроков, чтобы размер истории не менялся между вызовами
+    @Benchmark
+    public RoomReservationLock holdRoomFreeRange() {
+        RoomReservationLock lock = hotelService.holdRoom(
+                "b-" + requestSeq.incrementAndGet(), ROOM_ID, freeStart, freeStart.plusDays(2));
+        index.onReleased(lock);
+        holdExpiry.cancel(lock);
+        return lock;
+    }
+
+    // Занятые даты: индекс отвечает «возможен конфликт», подтверждение идёт в репозиторий
+    @Benchmark
+    public Object holdRoomBusyRange() {
+        try {
+            return hotelService.holdRoom("b-" + requestSeq.incrementAndGet(), ROOM_ID, busyStart, busyStart.plusDays(2));
+        } catch (IllegalStateException e) {
+            return e;
+        }
+    }
+}
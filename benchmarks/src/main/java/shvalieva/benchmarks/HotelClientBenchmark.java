@@ -0,0 +1,98 @@
+package shvalieva.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+import shvalieva.config.HotelClientConfig;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Последовательность hold → confirm из саги бронирования по настоящему TCP-соединению.
+ * Hotel Service заменён локальным Reactor Netty сервером (HTTP/1.1 и h2c), отвечающим через serverDelayMs.
+ * default — WebClient.builder() без настроек (общий пул Reactor Netty), как до HotelClientConfig;
+ * pooled — клиент HotelClientConfig по HTTP/1.1; h2c — он же по HTTP/2 без TLS.
+ * 32 потока больше размера общего пула по умолчанию, поэтому в default заметно ожидание соединения.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class HotelClientBenchmark {
+
+    @Param({"default", "pooled", "h2c"})
+    public String client;
+
+    @Param({"0", "5"})
+    public int serverDelayMs;
+
+    private DisposableServer server;
+    private ConnectionProvider provider;
+    private WebClient webClient;
+
+    @Setup
+    public void setUp() {
+        Duration delay = Duration.ofMillis(serverDelayMs);
+        server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+                .route(routes -> routes.post("/rooms/{id}/{action}", (request, response) ->
+                        request.receive().then(Mono.delay(delay))
+                                .then(response.header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                                        .sendString(Mono.just("{}")).then())))
+                .bindNow();
+
+        WebClient.Builder builder = WebClient.builder().baseUrl("http://127.0.0.1:" + server.port());
+        if (!client.equals("default")) {
+            provider = HotelClientConfig.connectionProvider("bench-" + client, 200, 1000, 2000,
+                    15_000, 300_000, 30_000);
+            List<HttpProtocol> protocols = client.equals("h2c") ? List.of(HttpProtocol.H2C) : List.of(HttpProtocol.HTTP11);
+            builder.clientConnector(new ReactorClientHttpConnector(
+                    HotelClientConfig.httpClient(provider, 1000, 2000, protocols)));
+        }
+        webClient = builder.build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.disposeNow();
+        if (provider != null) {
+            provider.disposeLater().block();
+        }
+    }
+
+    @Benchmark
+    public void holdAndConfirm(ThreadCounter counter) {
+        String requestId = "bench-" + Thread.currentThread().getId() + "-" + counter.next++;
+        call("/rooms/1/hold", Map.of("requestId", requestId, "startDate", "2030-01-01", "endDate", "2030-01-02"))
+                .then(call("/rooms/1/confirm", Map.of("requestId", requestId)))
+                .block();
+    }
+
+    private Mono<Void> call(String path, Map<String, String> payload) {
+        return webClient.post()
+                .uri(path)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(payload)
+                .retrieve()
+                .bodyToMono(Void.class);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadCounter {
+        long next;
+    }
+}
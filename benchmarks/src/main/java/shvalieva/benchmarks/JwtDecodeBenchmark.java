@@ -0,0 +1,54 @@
+package shvalieva.benchmarks;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import shvalieva.security.JwtConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+// Проверка подписи и разбор JWT декодером шлюза (JwtConfig.reactiveJwtDecoder); cached — с кэшем проверенных токенов
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtDecodeBenchmark {
+    // не короче 32 байт, чтобы ключ совпадал с JwtSecretKeyProvider без дополнения нулями
+    private static final String SECRET = "benchmark-secret-benchmark-secret";
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private ReactiveJwtDecoder decoder;
+    private String token;
+
+    @Setup
+    public void setUp() throws Exception {
+        decoder = new JwtConfig().reactiveJwtDecoder(SECRET, cached ? 10_000 : 0, 300, new SimpleMeterRegistry());
+        Instant now = Instant.now();
+        SignedJWT jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256), new JWTClaimsSet.Builder()
+                .subject("1")
+                .claim("scope", "USER")
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plusSeconds(24 * 3600)))
+                .build());
+        jwt.sign(new MACSigner(SECRET.getBytes(StandardCharsets.UTF_8)));
+        token = jwt.serialize();
+    }
+
+    @Benchmark
+    public Jwt decode() {
+        return decoder.decode(token).block();
+    }
+}
@@ -0,0 +1,69 @@
+package shvalieva.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import reactor.core.scheduler.Schedulers;
+import shvalieva.entity.User;
+import shvalieva.enums.Role;
+import shvalieva.repository.RefreshTokenRepository;
+import shvalieva.repository.UserRepository;
+import shvalieva.security.PasswordEncoders;
+import shvalieva.service.AuthService;
+import shvalieva.service.PasswordVerifier;
+import shvalieva.service.RefreshTokenService;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Входов в секунду на одно ядро: AuthService.login с пулом PasswordVerifier из одного потока.
+ * Поиск пользователя — заглушка репозитория (кэш учётных данных в любом случае снимает его с горячего пути),
+ * как и запись refresh-токена, поэтому результат — стоимость проверки пароля выбранной схемой плюс выпуск токенов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(1)
+@Fork(1)
+public class LoginBenchmark {
+    private static final String PASSWORD = "benchmark-password";
+
+    @Param({"bcrypt-8", "bcrypt-10", "bcrypt-12", "argon2"})
+    public String scheme;
+
+    private PasswordVerifier verifier;
+    private AuthService authService;
+
+    @Setup
+    public void setUp() {
+        String id = scheme.startsWith(PasswordEncoders.BCRYPT) ? PasswordEncoders.BCRYPT : PasswordEncoders.ARGON2;
+        int strength = id.equals(PasswordEncoders.BCRYPT) ? Integer.parseInt(scheme.substring(scheme.indexOf('-') + 1)) : 10;
+        PasswordEncoder encoder = PasswordEncoders.delegating(id, strength, 16384, 2, 1);
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("bench");
+        user.setPassword(encoder.encode(PASSWORD));
+        user.setRole(Role.USER);
+        UserRepository users = Stubs.repository(UserRepository.class, Map.of(
+                "findByUsername", args -> Optional.of(user)));
+        RefreshTokenRepository refreshTokens = Stubs.repository(RefreshTokenRepository.class, Map.of(
+                "save", args -> args[0]));
+        verifier = new PasswordVerifier(encoder, new SimpleMeterRegistry(), 1, 16);
+        authService = new AuthService(users, verifier, new RefreshTokenService(refreshTokens, 30),
+                Schedulers.immediate(), "benchmark-secret-benchmark-secret", 3600, 30, 10_000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        verifier.destroy();
+    }
+
+    @Benchmark
+    public AuthService.Tokens login() {
+        return authService.login("bench", PASSWORD).block();
+    }
+}
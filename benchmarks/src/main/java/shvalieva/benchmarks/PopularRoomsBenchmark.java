@@ -0,0 +1,60 @@
+package shvalieva.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import shvalieva.dto.PopularRoom;
+import shvalieva.repository.RoomRepository;
+import shvalieva.service.HotelService;
+import shvalieva.service.PopularityLeaderboard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Популярные номера (HotelService.popularRooms) из рейтинга в памяти при большом числе номеров
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PopularRoomsBenchmark {
+
+    @Param({"1000", "100000"})
+    public int roomCount;
+
+    private final Random random = new Random(42);
+    private PopularityLeaderboard leaderboard;
+    private HotelService hotelService;
+
+    @Setup
+    public void setUp() {
+        List<PopularRoom> rooms = new ArrayList<>(roomCount);
+        for (int i = 0; i < roomCount; i++) {
+            rooms.add(new PopularRoom((long) i + 1, String.valueOf(i + 1), 2, random.nextInt(10_000), 1L));
+        }
+        RoomRepository roomRepository = Stubs.repository(RoomRepository.class, Map.of(
+                "findAllPopularity", args -> rooms
+        ));
+        leaderboard = new PopularityLeaderboard(roomRepository);
+        leaderboard.rebuild();
+        hotelService = new HotelService(null, roomRepository, null, null, null, leaderboard, null, null, null, null);
+    }
+
+    @Benchmark
+    public List<PopularRoom> top20() {
+        return hotelService.popularRooms(0, 20);
+    }
+
+    @Benchmark
+    public List<PopularRoom> all() {
+        return hotelService.popularRooms();
+    }
+
+    // Обновление рейтинга при подтверждении брони
+    @Benchmark
+    public void increment() {
+        leaderboard.increment((long) random.nextInt(roomCount) + 1, 1);
+    }
+}
@@ -0,0 +1,60 @@
+package shvalieva.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import shvalieva.dto.RoomView;
+import shvalieva.service.BookingService;
+import shvalieva.service.HotelCallGuard;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * BookingService.getRoomSuggestions: разбор страницы номеров, отсортированной Hotel Service.
+ * Ответ Hotel Service подставляется ExchangeFunction без сети.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoomSuggestionsBenchmark {
+
+    @Param({"100", "10000"})
+    public int roomCount;
+
+    private BookingService bookingService;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        String body = IntStream.range(0, roomCount)
+                .mapToObj(i -> "{\"id\":" + (i + 1) + ",\"number\":\"" + (i + 1) + "\",\"timesBooked\":" + random.nextInt(10_000) + "}")
+                .collect(Collectors.joining(",", "[", "]"));
+        WebClient.Builder builder = WebClient.builder().exchangeFunction(request -> Mono.just(
+                ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .body(body)
+                        .build()));
+        HotelCallGuard hotelGuard = new HotelCallGuard(new SimpleMeterRegistry(), 50, 20, 50, 10_000, 3, 64,
+                0.2, 5, 10, 0, 300);
+        bookingService = new BookingService(null, null, null, builder, hotelGuard, "http://hotel-service", 5000,
+                30_000, 300_000, Schedulers.immediate());
+    }
+
+    @Benchmark
+    public List<RoomView> suggestions() {
+        return bookingService.getRoomSuggestions();
+    }
+}
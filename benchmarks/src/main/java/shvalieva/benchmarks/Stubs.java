@@ -0,0 +1,21 @@
+package shvalieva.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.function.Function;
+
+// Заглушки Spring Data репозиториев: бенчмарки измеряют код сервисов без БД и контекста Spring
+final class Stubs {
+    private Stubs() {}
+
+    @SuppressWarnings("unchecked")
+    static <T> T repository(Class<T> type, Map<String, Function<Object[], Object>> methods) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Function<Object[], Object> impl = methods.get(method.getName());
+            if (impl == null) {
+                throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName());
+            }
+            return impl.apply(args);
+        });
+    }
+}
@@ -0,0 +1,78 @@
+package shvalieva.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * HTTP-клиент для вызовов Hotel Service. Собственный пул соединений вместо общего пула Reactor Netty:
+ * размер и очередь ожидания заданы явно, простаивающие соединения закрываются раньше, чем сервер
+ * закроет keep-alive, поэтому запрос не попадает на полузакрытое соединение.
+ * Бин ClientHttpConnector подхватывает автоконфигурированный WebClient.Builder.
+ * Метрики пула — reactor.netty.connection.provider.* с тегом name=hotel
+ * (active — выданные соединения, idle, pending — ожидающие выдачи).
+ */
+@Configuration
+public class HotelClientConfig {
+    public static final String POOL_NAME = "hotel";
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider hotelConnectionProvider(
+            @Value("${hotel.http.max-connections:200}") int maxConnections,
+            @Value("${hotel.http.pending-acquire-max:1000}") int pendingAcquireMax,
+            @Value("${hotel.http.pending-acquire-timeout-ms:2000}") long pendingAcquireTimeoutMs,
+            @Value("${hotel.http.max-idle-ms:15000}") long maxIdleMs,
+            @Value("${hotel.http.max-life-ms:300000}") long maxLifeMs,
+            @Value("${hotel.http.evict-interval-ms:30000}") long evictIntervalMs) {
+        return connectionProvider(POOL_NAME, maxConnections, pendingAcquireMax, pendingAcquireTimeoutMs,
+                maxIdleMs, maxLifeMs, evictIntervalMs);
+    }
+
+    @Bean
+    public ClientHttpConnector hotelClientHttpConnector(
+            ConnectionProvider hotelConnectionProvider,
+            @Value("${hotel.http.connect-timeout-ms:1000}") int connectTimeoutMs,
+            @Value("${hotel.timeout-ms:3000}") long responseTimeoutMs,
+            @Value("${hotel.http.protocols:HTTP11}") List<HttpProtocol> protocols) {
+        return new ReactorClientHttpConnector(
+                httpClient(hotelConnectionProvider, connectTimeoutMs, responseTimeoutMs, protocols));
+    }
+
+    public static ConnectionProvider connectionProvider(String name, int maxConnections, int pendingAcquireMax,
+                                                        long pendingAcquireTimeoutMs, long maxIdleMs,
+                                                        long maxLifeMs, long evictIntervalMs) {
+        return ConnectionProvider.builder(name)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofMillis(maxIdleMs))
+                .maxLifeTime(Duration.ofMillis(maxLifeMs))
+                .evictInBackground(Duration.ofMillis(evictIntervalMs))
+                // LIFO: нагрузка ложится на недавно использованные соединения, лишние простаивают и вытесняются
+                .lifo()
+                .metrics(true)
+                .build();
+    }
+
+    // H2C — HTTP/2 без TLS с предварительным знанием: все запросы идут потоками по нескольким соединениям.
+    // HTTP11 вместе с H2C — попытка upgrade на каждом новом соединении
+    public static HttpClient httpClient(ConnectionProvider provider, int connectTimeoutMs, long responseTimeoutMs,
+                                        List<HttpProtocol> protocols) {
+        return HttpClient.create(provider)
+                .protocol(protocols.toArray(HttpProtocol[]::new))
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .keepAlive(true)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs));
+    }
+}
@@ -0,0 +1,26 @@
+package shvalieva.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Режим виртуальных потоков (spring.threads.virtual.enabled=true): Tomcat, @Async и планировщик
+ * Spring Boot переводит на виртуальные потоки сам, здесь — пул для блокирующих шагов саги.
+ * Защита от пиннинга — в общем модуле virtual-threads.
+ */
+@Configuration
+public class VirtualThreadsConfig {
+
+    // Блокирующие шаги саги (JPA, вызовы Hotel Service): виртуальные потоки или boundedElastic
+    @Bean
+    public Scheduler blockingScheduler(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        return virtualThreads
+                ? Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "booking-virtual")
+                : Schedulers.boundedElastic();
+    }
+}
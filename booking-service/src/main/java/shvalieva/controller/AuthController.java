@@ -2,6 +2,7 @@ package shvalieva.controller;
 
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 import shvalieva.entity.User;
 import shvalieva.service.AuthService;
 
@@ -25,8 +26,26 @@ public class AuthController {
     }
 
     @PostMapping("/login")
-    public ResponseEntity<Map<String, String>> login(@RequestBody Map<String, String> req) {
-        String token = authService.login(req.get("username"), req.get("password"));
-        return ResponseEntity.ok(Map.of("access_token", token, "token_type", "Bearer"));
+    public Mono<ResponseEntity<Map<String, Object>>> login(@RequestBody Map<String, String> req) {
+        return authService.login(req.get("username"), req.get("password"))
+                .map(tokens -> ResponseEntity.ok(body(tokens)));
     }
-}
\ No newline at end of file
+
+    @PostMapping("/refresh")
+    public ResponseEntity<Map<String, Object>> refresh(@RequestBody Map<String, String> req) {
+        return ResponseEntity.ok(body(authService.refresh(req.get("refresh_token"))));
+    }
+
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(@RequestBody Map<String, String> req) {
+        authService.logout(req.get("refresh_token"));
+        return ResponseEntity.noContent().build();
+    }
+
+    private static Map<String, Object> body(AuthService.Tokens tokens) {
+        return Map.of("access_token", tokens.accessToken(),
+                "token_type", "Bearer",
+                "expires_in", tokens.expiresInSeconds(),
+                "refresh_token", tokens.refreshToken());
+    }
+}
@@ -1,50 +1,81 @@
 package shvalieva.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Mono;
+import shvalieva.dto.BookingExportFilter;
+import shvalieva.dto.BookingPage;
+import shvalieva.dto.BookingSummary;
 import shvalieva.dto.RoomView;
 import shvalieva.entity.Booking;
 import shvalieva.repository.BookingRepository;
+import shvalieva.service.BookingExportService;
 import shvalieva.service.BookingService;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/bookings")
 @io.swagger.v3.oas.annotations.security.SecurityRequirement(name = "bearer-jwt")
 public class BookingController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final BookingService bookingService;
     private final BookingRepository bookingRepository;
+    private final BookingExportService exportService;
 
-    public BookingController(BookingService bookingService, BookingRepository bookingRepository) {
+    public BookingController(BookingService bookingService, BookingRepository bookingRepository,
+                             BookingExportService exportService) {
         this.bookingService = bookingService;
         this.bookingRepository = bookingRepository;
+        this.exportService = exportService;
     }
 
     @PostMapping
-    public Booking create(@AuthenticationPrincipal Jwt jwt, @RequestBody Map<String, String> req) {
+    public Mono<Booking> create(@AuthenticationPrincipal Jwt jwt, @RequestBody Map<String, String> req) {
         Long userId = Long.parseLong(jwt.getSubject());
         Long roomId = Long.valueOf(req.get("roomId"));
         LocalDate start = LocalDate.parse(req.get("startDate"));
         LocalDate end = LocalDate.parse(req.get("endDate"));
         String requestId = req.get("requestId");
-        return bookingService.createBooking(userId, roomId, start, end, requestId);
+        // Асинхронный ответ: поток сервлета освобождается на время саги
+        return bookingService.createBookingAsync(userId, roomId, start, end, requestId);
     }
 
+    // Мои бронирования keyset-страницами, новые первыми; курсор следующей страницы — в заголовке X-Next-Cursor
     @GetMapping
-    public List<Booking> myBookings(@AuthenticationPrincipal Jwt jwt) {
+    public ResponseEntity<List<BookingSummary>> myBookings(@AuthenticationPrincipal Jwt jwt,
+                                                           @RequestParam(required = false) List<Booking.Status> status,
+                                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                           @RequestParam(required = false) String after,
+                                                           @RequestParam(defaultValue = "50") int size) {
         Long userId = Long.parseLong(jwt.getSubject());
-        return bookingRepository.findByUserId(userId);
+        BookingPage page;
+        try {
+            page = bookingService.listUserBookings(userId, status, from, to, after, Math.min(Math.max(size, 1), 500));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.next() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.next());
+        }
+        return response.body(page.items());
     }
 
     @GetMapping("/suggestions")
-    public List<RoomView> suggestions() {
-        return bookingService.getRoomSuggestions();
+    public List<RoomView> suggestions(@RequestParam(defaultValue = "100") int size) {
+        return bookingService.getRoomSuggestions(Math.min(Math.max(size, 1), 1000));
     }
 
 
@@ -56,4 +87,34 @@ public class BookingController {
         }
         return ResponseEntity.status(403).build();
     }
+
+    /**
+     * Выгрузка для больших объёмов: /bookings/all?format=ndjson|csv&from=&to=&status=&after=.
+     * Пишется синхронно прямо в поток ответа — длинная выгрузка не упирается в таймаут async-запросов.
+     * after — id последней полученной строки, выгрузка продолжается со следующей.
+     */
+    @GetMapping(value = "/all", params = "format")
+    public void export(@AuthenticationPrincipal Jwt jwt,
+                       @RequestParam String format,
+                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                       @RequestParam(required = false) List<Booking.Status> status,
+                       @RequestParam(required = false) Long after,
+                       HttpServletResponse response) throws IOException {
+        if (!"ADMIN".equals(jwt.getClaimAsString("scope"))) {
+            response.sendError(403);
+            return;
+        }
+        BookingExportService.Format exportFormat;
+        try {
+            exportFormat = BookingExportService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            response.sendError(400, "Неизвестный формат: " + format);
+            return;
+        }
+        response.setContentType(exportFormat == BookingExportService.Format.CSV
+                ? "text/csv;charset=UTF-8"
+                : MediaType.APPLICATION_NDJSON_VALUE);
+        exportService.export(new BookingExportFilter(from, to, status, after), exportFormat, response.getOutputStream());
+    }
 }
\ No newline at end of file
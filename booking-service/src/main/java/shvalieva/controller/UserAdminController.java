@@ -5,6 +5,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import shvalieva.entity.User;
 import shvalieva.repository.UserRepository;
+import shvalieva.service.AuthService;
 
 import java.util.List;
 
@@ -12,9 +13,11 @@ import java.util.List;
 @RequestMapping("/admin/users")
 public class UserAdminController {
     private final UserRepository userRepository;
+    private final AuthService authService;
 
-    public UserAdminController(UserRepository userRepository) {
+    public UserAdminController(UserRepository userRepository, AuthService authService) {
         this.userRepository = userRepository;
+        this.authService = authService;
     }
 
     @GetMapping
@@ -31,13 +34,19 @@ public class UserAdminController {
     @PreAuthorize("hasAuthority('SCOPE_ADMIN')")
     public ResponseEntity<User> update(@PathVariable Long id, @RequestBody User u) {
         return userRepository.findById(id)
-                .map(ex -> { u.setId(id); return ResponseEntity.ok(userRepository.save(u)); })
+                .map(ex -> {
+                    u.setId(id);
+                    User saved = userRepository.save(u);
+                    authService.evictUser(ex);
+                    return ResponseEntity.ok(saved);
+                })
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @DeleteMapping("/{id}")
     @PreAuthorize("hasAuthority('SCOPE_ADMIN')")
     public ResponseEntity<Void> delete(@PathVariable Long id) {
+        userRepository.findById(id).ifPresent(authService::evictUser);
         userRepository.deleteById(id);
         return ResponseEntity.noContent().build();
     }
@@ -0,0 +1,24 @@
+package shvalieva.dto;
+
+import shvalieva.entity.Booking;
+
+import java.time.LocalDate;
+
+// Содержимое события outbox о смене статуса бронирования
+public record BookingEvent(
+        Long id,
+        String requestId,
+        Long userId,
+        Long roomId,
+        LocalDate startDate,
+        LocalDate endDate,
+        Booking.Status status,
+        String correlationId
+) {
+    public static final String AGGREGATE = "Booking";
+
+    public static BookingEvent of(Booking booking) {
+        return new BookingEvent(booking.getId(), booking.getRequestId(), booking.getUserId(), booking.getRoomId(),
+                booking.getStartDate(), booking.getEndDate(), booking.getStatus(), booking.getCorrelationId());
+    }
+}
@@ -0,0 +1,17 @@
+package shvalieva.dto;
+
+import shvalieva.entity.Booking;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Фильтр выгрузки бронирований. Период — по дате создания, обе границы включительно;
+ * afterId — токен продолжения (id последней полученной записи). null — без ограничения.
+ */
+public record BookingExportFilter(
+        LocalDate from,
+        LocalDate to,
+        List<Booking.Status> statuses,
+        Long afterId
+) {}
@@ -0,0 +1,9 @@
+package shvalieva.dto;
+
+import java.util.List;
+
+// Страница keyset-пагинации; next == null — страниц больше нет
+public record BookingPage(
+        List<BookingSummary> items,
+        String next
+) {}
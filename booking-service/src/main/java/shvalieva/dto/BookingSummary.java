@@ -0,0 +1,16 @@
+package shvalieva.dto;
+
+import shvalieva.entity.Booking;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+
+// Облегчённое представление бронирования для списков: без ключа идемпотентности и служебных полей
+public record BookingSummary(
+        Long id,
+        Long roomId,
+        LocalDate startDate,
+        LocalDate endDate,
+        Booking.Status status,
+        OffsetDateTime createdAt
+) {}
@@ -5,7 +5,9 @@ import java.time.LocalDate;
 import java.time.OffsetDateTime;
 
 @Entity
-@Table(uniqueConstraints = @UniqueConstraint(name = "uk_booking_request", columnNames = {"requestId"}))
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_booking_request", columnNames = {"requestId"}),
+        // Бронирования пользователя от новых к старым (GET /bookings); id — для однозначного порядка страниц
+        indexes = @Index(name = "idx_booking_user_created", columnList = "userId, createdAt, id"))
 public class Booking {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -25,7 +27,7 @@ public class Booking {
 
     private OffsetDateTime createdAt;
 
-    public enum Status { PENDING, CONFIRMED, CANCELLED }
+    public enum Status { PENDING, HELD, CONFIRMED, CANCELLED }
 
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
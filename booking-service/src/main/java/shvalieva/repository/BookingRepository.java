@@ -1,12 +1,23 @@
 package shvalieva.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import shvalieva.entity.Booking;
 
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
-public interface BookingRepository extends JpaRepository<Booking, Long> {
+public interface BookingRepository extends JpaRepository<Booking, Long>, BookingRepositoryCustom {
     Optional<Booking> findByRequestId(String requestId);
-    List<Booking> findByUserId(Long userId);
+    List<Booking> findByStatusInAndCreatedAtBefore(List<Booking.Status> statuses, OffsetDateTime createdBefore);
+
+    // Переход статуса только из ожидаемых: сага и восстановление зависших бронирований не перезаписывают друг друга
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Booking b set b.status = :status where b.id = :id and b.status in :expected")
+    int updateStatus(@Param("id") Long id, @Param("expected") Collection<Booking.Status> expected,
+                     @Param("status") Booking.Status status);
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package shvalieva.repository;
+
+import shvalieva.dto.BookingExportFilter;
+import shvalieva.dto.BookingSummary;
+import shvalieva.entity.Booking;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface BookingRepositoryCustom {
+    // Бронирования по возрастанию id через курсор JDBC; вызывать внутри транзакции и закрывать Stream
+    Stream<Booking> streamForExport(BookingExportFilter filter);
+
+    /**
+     * Бронирования пользователя от новых к старым, не больше limit строк после (afterCreatedAt, afterId).
+     * Фильтр по периоду — по дате создания: [from, to); null — без ограничения.
+     */
+    List<BookingSummary> findUserSummaries(Long userId, List<Booking.Status> statuses,
+                                           OffsetDateTime from, OffsetDateTime to,
+                                           OffsetDateTime afterCreatedAt, Long afterId, int limit);
+}
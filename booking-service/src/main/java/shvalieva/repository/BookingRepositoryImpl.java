@@ -0,0 +1,116 @@
+package shvalieva.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import shvalieva.dto.BookingExportFilter;
+import shvalieva.dto.BookingSummary;
+import shvalieva.entity.Booking;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class BookingRepositoryImpl implements BookingRepositoryCustom {
+    private static final String SELECT_SQL =
+            "select id, request_id, user_id, room_id, start_date, end_date, status, correlation_id, created_at"
+                    + " from booking where id > ?";
+
+    // Строки не попадают в контекст персистентности, память не растёт с объёмом выгрузки
+    private static final RowMapper<Booking> ROW_MAPPER = (rs, rowNum) -> {
+        Booking b = new Booking();
+        b.setId(rs.getLong("id"));
+        b.setRequestId(rs.getString("request_id"));
+        b.setUserId(rs.getObject("user_id", Long.class));
+        b.setRoomId(rs.getObject("room_id", Long.class));
+        b.setStartDate(rs.getObject("start_date", LocalDate.class));
+        b.setEndDate(rs.getObject("end_date", LocalDate.class));
+        String status = rs.getString("status");
+        b.setStatus(status == null ? null : Booking.Status.valueOf(status));
+        b.setCorrelationId(rs.getString("correlation_id"));
+        b.setCreatedAt(rs.getObject("created_at", OffsetDateTime.class));
+        return b;
+    };
+
+    // Порядок совпадает с индексом (user_id, created_at, id): страница читается из индекса без сортировки
+    private static final String USER_SUMMARY_SQL =
+            "select id, room_id, start_date, end_date, status, created_at from booking where user_id = ?";
+
+    private static final RowMapper<BookingSummary> SUMMARY_MAPPER = (rs, rowNum) -> {
+        String status = rs.getString("status");
+        return new BookingSummary(
+                rs.getLong("id"),
+                rs.getObject("room_id", Long.class),
+                rs.getObject("start_date", LocalDate.class),
+                rs.getObject("end_date", LocalDate.class),
+                status == null ? null : Booking.Status.valueOf(status),
+                rs.getObject("created_at", OffsetDateTime.class));
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public BookingRepositoryImpl(DataSource dataSource,
+                                 @Value("${booking.export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    @Override
+    public Stream<Booking> streamForExport(BookingExportFilter filter) {
+        StringBuilder sql = new StringBuilder(SELECT_SQL);
+        List<Object> args = new ArrayList<>();
+        args.add(filter.afterId() == null ? 0L : filter.afterId());
+        if (filter.from() != null) {
+            sql.append(" and created_at >= ?");
+            args.add(filter.from().atStartOfDay().atOffset(ZoneOffset.UTC));
+        }
+        if (filter.to() != null) {
+            sql.append(" and created_at < ?");
+            args.add(filter.to().plusDays(1).atStartOfDay().atOffset(ZoneOffset.UTC));
+        }
+        if (filter.statuses() != null && !filter.statuses().isEmpty()) {
+            sql.append(" and status in (")
+                    .append(String.join(", ", filter.statuses().stream().map(s -> "?").toList()))
+                    .append(")");
+            filter.statuses().forEach(s -> args.add(s.name()));
+        }
+        sql.append(" order by id");
+        return jdbcTemplate.queryForStream(sql.toString(), ROW_MAPPER, args.toArray());
+    }
+
+    @Override
+    public List<BookingSummary> findUserSummaries(Long userId, List<Booking.Status> statuses,
+                                                  OffsetDateTime from, OffsetDateTime to,
+                                                  OffsetDateTime afterCreatedAt, Long afterId, int limit) {
+        StringBuilder sql = new StringBuilder(USER_SUMMARY_SQL);
+        List<Object> args = new ArrayList<>();
+        args.add(userId);
+        if (from != null) {
+            sql.append(" and created_at >= ?");
+            args.add(from);
+        }
+        if (to != null) {
+            sql.append(" and created_at < ?");
+            args.add(to);
+        }
+        if (afterCreatedAt != null) {
+            sql.append(" and (created_at < ? or (created_at = ? and id < ?))");
+            args.add(afterCreatedAt);
+            args.add(afterCreatedAt);
+            args.add(afterId);
+        }
+        if (statuses != null && !statuses.isEmpty()) {
+            sql.append(" and status in (")
+                    .append(String.join(", ", statuses.stream().map(s -> "?").toList()))
+                    .append(")");
+            statuses.forEach(s -> args.add(s.name()));
+        }
+        sql.append(" order by created_at desc, id desc limit ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), SUMMARY_MAPPER, args.toArray());
+    }
+}
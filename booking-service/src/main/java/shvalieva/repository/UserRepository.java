@@ -1,10 +1,20 @@
 package shvalieva.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import shvalieva.entity.User;
 
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
-}
\ No newline at end of file
+
+    // Замена хэша при входе, только если он не изменился с момента чтения
+    @Transactional
+    @Modifying
+    @Query("update User u set u.password = :newHash, u.version = u.version + 1 where u.id = :id and u.password = :oldHash")
+    int updatePassword(@Param("id") Long id, @Param("oldHash") String oldHash, @Param("newHash") String newHash);
+}
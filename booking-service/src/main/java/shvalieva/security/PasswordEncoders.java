@@ -0,0 +1,35 @@
+package shvalieva.security;
+
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Map;
+
+/**
+ * Хэши хранятся с префиксом схемы ({bcrypt}…, {argon2}…), новые пароли кодируются схемой encoderId.
+ * Хэш старой схемы или с параметрами слабее текущих (меньший cost BCrypt, меньше памяти/итераций Argon2)
+ * upgradeEncoding отмечает для перекодирования при следующем входе. Хэши без префикса — BCrypt
+ * из версии до DelegatingPasswordEncoder.
+ */
+public final class PasswordEncoders {
+    public static final String BCRYPT = "bcrypt";
+    public static final String ARGON2 = "argon2";
+
+    private PasswordEncoders() {}
+
+    public static PasswordEncoder delegating(String encoderId, int bcryptStrength,
+                                             int argon2MemoryKb, int argon2Iterations, int argon2Parallelism) {
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(bcryptStrength);
+        Map<String, PasswordEncoder> encoders = Map.of(
+                BCRYPT, bcrypt,
+                ARGON2, new Argon2PasswordEncoder(16, 32, argon2Parallelism, argon2MemoryKb, argon2Iterations));
+        if (!encoders.containsKey(encoderId)) {
+            throw new IllegalArgumentException("Unknown password encoder: " + encoderId);
+        }
+        DelegatingPasswordEncoder delegating = new DelegatingPasswordEncoder(encoderId, encoders);
+        delegating.setDefaultPasswordEncoderForMatches(bcrypt);
+        return delegating;
+    }
+}
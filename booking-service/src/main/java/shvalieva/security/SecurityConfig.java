@@ -1,39 +1,61 @@
 package shvalieva.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.server.resource.web.authentication.BearerTokenAuthenticationFilter;
 import org.springframework.beans.factory.annotation.Value;
+import shvalieva.security.common.CachingJwtDecoder;
+import shvalieva.security.common.TrustedIdentityFilter;
+
+import java.time.Duration;
 
 @Configuration
 @EnableMethodSecurity
 public class SecurityConfig {
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http,
+                                           @Value("${security.trusted-hop.enabled:false}") boolean trustedHop,
+                                           @Value("${security.trusted-hop.secret:}") String trustedHopSecret) throws Exception {
         http.csrf(AbstractHttpConfigurer::disable);
         http.authorizeHttpRequests(registry -> registry
                 .requestMatchers("/actuator/**", "/auth/**").permitAll()
                 .anyRequest().authenticated()
         );
-        http.oauth2ResourceServer(oauth2 -> oauth2.jwt());
+        if (trustedHop) {
+            http.addFilterBefore(new TrustedIdentityFilter(trustedHopSecret), BearerTokenAuthenticationFilter.class);
+        }
+        http.oauth2ResourceServer(oauth2 -> oauth2.bearerTokenResolver(TrustedIdentityFilter.bearerTokenResolver()).jwt());
         return http.build();
     }
 
+    // cache.max-entries=0 — без кэша проверенных токенов
     @Bean
-    public JwtDecoder jwtDecoder(@Value("${security.jwt.secret:dev-secret-please-change}") String secret) {
-        return NimbusJwtDecoder.withSecretKey(JwtSecretKeyProvider.getHmacKey(secret)).build();
+    public JwtDecoder jwtDecoder(@Value("${security.jwt.secret:dev-secret-please-change}") String secret,
+                                 @Value("${security.jwt.cache.max-entries:10000}") int cacheMaxEntries,
+                                 @Value("${security.jwt.cache.max-ttl-seconds:300}") long cacheMaxTtlSeconds,
+                                 MeterRegistry meterRegistry) {
+        JwtDecoder decoder = NimbusJwtDecoder.withSecretKey(JwtSecretKeyProvider.getHmacKey(secret)).build();
+        return cacheMaxEntries > 0
+                ? new CachingJwtDecoder(decoder, cacheMaxEntries, Duration.ofSeconds(cacheMaxTtlSeconds), meterRegistry)
+                : decoder;
     }
 
+    // encoder: bcrypt | argon2; хэши прежней схемы и стоимости перекодируются при входе
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${auth.password.encoder:bcrypt}") String encoderId,
+                                           @Value("${auth.password.bcrypt.strength:10}") int bcryptStrength,
+                                           @Value("${auth.password.argon2.memory-kb:16384}") int argon2MemoryKb,
+                                           @Value("${auth.password.argon2.iterations:2}") int argon2Iterations,
+                                           @Value("${auth.password.argon2.parallelism:1}") int argon2Parallelism) {
+        return PasswordEncoders.delegating(encoderId, bcryptStrength, argon2MemoryKb, argon2Iterations, argon2Parallelism);
     }
 }
\ No newline at end of file
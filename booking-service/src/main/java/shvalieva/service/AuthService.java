@@ -1,64 +1,154 @@
 package shvalieva.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.lang.Assert;
 import io.jsonwebtoken.security.Keys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.BadCredentialsException;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 import shvalieva.entity.User;
 import shvalieva.enums.Role;
 import shvalieva.repository.UserRepository;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Date;
 import java.util.List;
 
 @Service
 public class AuthService {
+    private static final Logger log = LoggerFactory.getLogger(AuthService.class);
 
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordVerifier passwordVerifier;
+    private final RefreshTokenService refreshTokens;
+    private final Scheduler blockingScheduler;
     private final SecretKey key;
+    private final Duration accessTtl;
+    // Короткоживущий кэш учётных данных для пиков входа; изменение и удаление пользователя вызывают evictUser
+    private final Cache<String, Credentials> credentials;
+
+    private record Credentials(Long id, String username, String passwordHash, Role role) {}
+
+    public record Tokens(String accessToken, String refreshToken, long expiresInSeconds) {}
 
     public AuthService(UserRepository userRepository,
-                       PasswordEncoder passwordEncoder,
-                       @Value("${security.jwt.secret}") String secret) {
+                       PasswordVerifier passwordVerifier,
+                       RefreshTokenService refreshTokens,
+                       Scheduler blockingScheduler,
+                       @Value("${security.jwt.secret}") String secret,
+                       @Value("${security.jwt.access-ttl-seconds:3600}") long accessTtlSeconds,
+                       @Value("${auth.user-cache.ttl-seconds:30}") long userCacheTtlSeconds,
+                       @Value("${auth.user-cache.max-size:10000}") long userCacheMaxSize) {
 
         this.userRepository = userRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordVerifier = passwordVerifier;
+        this.refreshTokens = refreshTokens;
+        this.blockingScheduler = blockingScheduler;
+        this.accessTtl = Duration.ofSeconds(accessTtlSeconds);
 
         byte[] bytes = secret.getBytes(StandardCharsets.UTF_8);
         Assert.isTrue(bytes.length >= 32, "JWT secret must be at least 256 bits");
         this.key = Keys.hmacShaKeyFor(bytes);
+        this.credentials = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(userCacheTtlSeconds))
+                .maximumSize(userCacheMaxSize)
+                .build();
     }
 
     public User register(String username, String password, boolean admin) {
         User u = new User();
         u.setUsername(username);
-        u.setPassword(passwordEncoder.encode(password));
+        u.setPassword(passwordVerifier.encode(password).join());
         u.setRole(admin ? Role.ADMIN : Role.USER);
         return userRepository.save(u);
     }
 
-    public String login(String username, String password) {
-        User u = userRepository.findByUsername(username)
-                .orElseThrow(() -> new BadCredentialsException("Invalid credentials"));
+    /**
+     * Проверка пароля идёт на пуле PasswordVerifier, поток запроса не ждёт BCrypt/Argon2.
+     * Хэш устаревшей схемы или стоимости заменяется новым после успешного входа.
+     * Запись в БД (перекодированный хэш, refresh-токен) — уже на blockingScheduler, не на пуле паролей.
+     */
+    public Mono<Tokens> login(String username, String password) {
+        return Mono.defer(() -> {
+            Credentials c = lookup(username);
+            if (c == null) {
+                return Mono.error(new BadCredentialsException("Invalid credentials"));
+            }
+            return Mono.fromFuture(passwordVerifier.verify(password, c.passwordHash()))
+                    .publishOn(blockingScheduler)
+                    .map(result -> {
+                        if (!result.matches()) {
+                            throw new BadCredentialsException("Invalid credentials");
+                        }
+                        if (result.upgradedHash() != null) {
+                            upgrade(c, result.upgradedHash());
+                        }
+                        return new Tokens(accessToken(c), refreshTokens.issue(c.id()), accessTtl.toSeconds());
+                    });
+        });
+    }
+
+    // Обновление без пароля: refresh-токен сменяется на новый, access-токен выпускается заново
+    public Tokens refresh(String refreshToken) {
+        RefreshTokenService.Rotation rotation = refreshTokens.rotate(refreshToken);
+        User u = userRepository.findById(rotation.userId())
+                .orElseThrow(() -> new BadCredentialsException("Invalid refresh token"));
+        Credentials c = new Credentials(u.getId(), u.getUsername(), u.getPassword(), u.getRole());
+        return new Tokens(accessToken(c), rotation.refreshToken(), accessTtl.toSeconds());
+    }
+
+    public void logout(String refreshToken) {
+        refreshTokens.revoke(refreshToken);
+    }
 
-        if (!passwordEncoder.matches(password, u.getPassword())) {
-            throw new BadCredentialsException("Invalid credentials");
+    // Пользователь изменён или удалён: кэш учётных данных сбрасывается, выданные refresh-токены отзываются
+    public void evictUser(User user) {
+        credentials.invalidate(user.getUsername());
+        refreshTokens.revokeAllForUser(user.getId());
+    }
+
+    private Credentials lookup(String username) {
+        Credentials cached = credentials.getIfPresent(username);
+        if (cached != null) {
+            return cached;
+        }
+        // Неизвестные имена не кэшируются: зарегистрированный после промаха пользователь сразу может войти
+        return userRepository.findByUsername(username)
+                .map(u -> {
+                    Credentials c = new Credentials(u.getId(), u.getUsername(), u.getPassword(), u.getRole());
+                    credentials.put(username, c);
+                    return c;
+                })
+                .orElse(null);
+    }
+
+    // Условное обновление: если хэш уже сменили (новый пароль, параллельный вход), перекодирование пропускается
+    private void upgrade(Credentials c, String upgradedHash) {
+        if (userRepository.updatePassword(c.id(), c.passwordHash(), upgradedHash) > 0) {
+            credentials.put(c.username(), new Credentials(c.id(), c.username(), upgradedHash, c.role()));
+        } else {
+            credentials.invalidate(c.username());
+            log.debug("Password hash of user {} changed concurrently, upgrade skipped", c.id());
         }
+    }
 
+    private String accessToken(Credentials c) {
         Instant now = Instant.now();
         return Jwts.builder()
-                .setSubject(u.getUsername())
-                .claim("userId", u.getId())
-                .claim("authorities", List.of("ROLE_" + u.getRole().name()))
+                .setSubject(c.username())
+                .claim("userId", c.id())
+                .claim("authorities", List.of("ROLE_" + c.role().name()))
                 .setIssuedAt(Date.from(now))
-                .setExpiration(Date.from(now.plusSeconds(3600)))
+                .setExpiration(Date.from(now.plus(accessTtl)))
                 .signWith(key)
                 .compact();
     }
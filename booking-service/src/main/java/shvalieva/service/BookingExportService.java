@@ -0,0 +1,96 @@
+package shvalieva.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import shvalieva.dto.BookingExportFilter;
+import shvalieva.entity.Booking;
+import shvalieva.repository.BookingRepository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Потоковая выгрузка бронирований: строки читаются курсором БД и сразу пишутся в выходной поток,
+ * расход памяти не зависит от числа строк. Порядок — по id, поэтому прерванную выгрузку можно
+ * продолжить с id последней полученной строки.
+ */
+@Service
+public class BookingExportService {
+    private static final String CSV_HEADER =
+            "id,requestId,userId,roomId,startDate,endDate,status,correlationId,createdAt\n";
+
+    public enum Format { NDJSON, CSV }
+
+    private final BookingRepository bookingRepository;
+    private final ObjectMapper objectMapper;
+
+    public BookingExportService(BookingRepository bookingRepository, ObjectMapper objectMapper) {
+        this.bookingRepository = bookingRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    // Возвращает число выгруженных строк
+    @Transactional(readOnly = true)
+    public long export(BookingExportFilter filter, Format format, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        if (format == Format.CSV) {
+            writer.write(CSV_HEADER);
+        }
+        long count = 0;
+        try (Stream<Booking> rows = bookingRepository.streamForExport(filter)) {
+            Iterator<Booking> it = rows.iterator();
+            while (it.hasNext()) {
+                Booking b = it.next();
+                if (format == Format.CSV) {
+                    writeCsv(writer, b);
+                } else {
+                    writer.write(objectMapper.writeValueAsString(b));
+                    writer.write('\n');
+                }
+                count++;
+            }
+        }
+        writer.flush();
+        return count;
+    }
+
+    private static void writeCsv(Writer writer, Booking b) throws IOException {
+        writer.write(String.valueOf(b.getId()));
+        writer.write(',');
+        writer.write(csv(b.getRequestId()));
+        writer.write(',');
+        writer.write(csv(b.getUserId()));
+        writer.write(',');
+        writer.write(csv(b.getRoomId()));
+        writer.write(',');
+        writer.write(csv(b.getStartDate()));
+        writer.write(',');
+        writer.write(csv(b.getEndDate()));
+        writer.write(',');
+        writer.write(csv(b.getStatus()));
+        writer.write(',');
+        writer.write(csv(b.getCorrelationId()));
+        writer.write(',');
+        writer.write(csv(b.getCreatedAt()));
+        writer.write('\n');
+    }
+
+    // RFC 4180: поля с разделителями и кавычками берутся в кавычки, кавычки удваиваются
+    private static String csv(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String s = value.toString();
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) {
+            return s;
+        }
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+}
@@ -3,47 +3,77 @@ package shvalieva.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
-import reactor.util.retry.Retry;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import shvalieva.dto.BookingEvent;
+import shvalieva.dto.BookingPage;
+import shvalieva.dto.BookingSummary;
 import shvalieva.dto.RoomView;
 import shvalieva.entity.Booking;
+import shvalieva.outbox.OutboxWriter;
 import shvalieva.repository.BookingRepository;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
-import java.util.Comparator;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 
 @Service
 public class BookingService {
 
     private static final Logger log = LoggerFactory.getLogger(BookingService.class);
+    private static final int DEFAULT_SUGGESTIONS = 100;
 
     private final BookingRepository bookingRepository;
+    private final OutboxWriter outbox;
+    private final TransactionTemplate transactionTemplate;
     private final WebClient webClient;
-    private final int retries;
+    private final HotelCallGuard hotelGuard;
     private final Duration timeout;
+    private final Duration sagaTimeout;
+    private final Duration staleAfter;
+    private final Scheduler blockingScheduler;
 
     public BookingService(
             BookingRepository bookingRepository,
+            OutboxWriter outbox,
+            PlatformTransactionManager transactionManager,
             WebClient.Builder webClientBuilder,
+            HotelCallGuard hotelGuard,
             @Value("${hotel.base-url}") String hotelBaseUrl,
             @Value("${hotel.timeout-ms:3000}") int timeoutMs,
-            @Value("${hotel.retries:3}") int retries
+            @Value("${booking.saga.timeout-ms:30000}") long sagaTimeoutMs,
+            @Value("${booking.saga.stale-after-ms:300000}") long staleAfterMs,
+            Scheduler blockingScheduler
     ) {
         this.bookingRepository = bookingRepository;
+        this.outbox = outbox;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
         this.webClient = webClientBuilder.baseUrl(hotelBaseUrl).build();
-        this.retries = retries;
+        this.hotelGuard = hotelGuard;
         this.timeout = Duration.ofMillis(timeoutMs);
+        this.sagaTimeout = Duration.ofMillis(sagaTimeoutMs);
+        this.staleAfter = Duration.ofMillis(staleAfterMs);
+        this.blockingScheduler = blockingScheduler;
     }
 
-    @Transactional
+    /**
+     * Синхронная обёртка над {@link #createBookingAsync}: ждёт завершения саги не дольше booking.saga.timeout-ms.
+     * Прерванная по таймауту сага остаётся в PENDING/HELD и компенсируется {@link #recoverStaleBookings}.
+     */
     public Booking createBooking(
             Long userId,
             Long roomId,
@@ -51,12 +81,36 @@ public class BookingService {
             LocalDate end,
             String requestId
     ) {
+        return createBookingAsync(userId, roomId, start, end, requestId).block(sagaTimeout);
+    }
+
+    /**
+     * Сага бронирования PENDING → HELD → CONFIRMED/CANCELLED.
+     * Каждый шаг сохраняется короткой локальной транзакцией, удалённые вызовы не блокируют поток
+     * и не удерживают соединение с БД.
+     */
+    public Mono<Booking> createBookingAsync(
+            Long userId,
+            Long roomId,
+            LocalDate start,
+            LocalDate end,
+            String requestId
+    ) {
+        return blocking(() -> bookingRepository.findByRequestId(requestId))
+                .flatMap(existing -> existing
+                        .map(Mono::just)
+                        .orElseGet(() -> startBooking(userId, roomId, start, end, requestId)));
+    }
 
-        Booking existing = bookingRepository.findByRequestId(requestId).orElse(null);
-        if (existing != null) {
-            return existing;
+    private Mono<Booking> startBooking(Long userId, Long roomId, LocalDate start, LocalDate end, String requestId) {
+        // Автомат открыт: новое бронирование отклоняется сразу (503), без строки PENDING и удержания
+        if (!hotelGuard.isAvailable()) {
+            return Mono.error(new HotelCallGuard.HotelUnavailableException("Hotel Service недоступен, повторите позже"));
         }
+        return runBooking(userId, roomId, start, end, requestId);
+    }
 
+    private Mono<Booking> runBooking(Long userId, Long roomId, LocalDate start, LocalDate end, String requestId) {
         String correlationId = UUID.randomUUID().toString();
 
         Booking booking = new Booking();
@@ -69,70 +123,159 @@ public class BookingService {
         booking.setCorrelationId(correlationId);
         booking.setCreatedAt(OffsetDateTime.now());
 
-        bookingRepository.save(booking);
-        log.info("[{}] Booking PENDING created", correlationId);
+        return blocking(() -> save(booking))
+                .doOnNext(b -> log.info("[{}] Booking PENDING created", correlationId))
+                .flatMap(this::runSaga)
+                // параллельный запрос с тем же requestId успел создать бронирование первым
+                .onErrorResume(DataIntegrityViolationException.class, ex ->
+                        blocking(() -> bookingRepository.findByRequestId(requestId))
+                                .flatMap(existing -> existing.map(Mono::just).orElseGet(() -> Mono.error(ex))));
+    }
 
+    private Mono<Booking> runSaga(Booking booking) {
+        String correlationId = booking.getCorrelationId();
+        String roomPath = "/rooms/" + booking.getRoomId();
         Map<String, String> payload = Map.of(
-                "requestId", requestId,
-                "startDate", start.toString(),
-                "endDate", end.toString()
+                "requestId", booking.getRequestId(),
+                "startDate", booking.getStartDate().toString(),
+                "endDate", booking.getEndDate().toString()
         );
+        Map<String, String> ref = Map.of("requestId", booking.getRequestId());
 
-        try {
-            callHotel("/rooms/" + roomId + "/hold", payload, correlationId);
-            callHotel("/rooms/" + roomId + "/confirm", Map.of("requestId", requestId), correlationId);
-
-            booking.setStatus(Booking.Status.CONFIRMED);
-            bookingRepository.save(booking);
-
-            log.info("[{}] Booking CONFIRMED", correlationId);
-
-        } catch (Exception ex) {
-            log.warn("[{}] Booking failed, compensating: {}", correlationId, ex.getMessage());
+        return callHotel(roomPath + "/hold", payload, correlationId)
+                .then(moveTo(booking, Booking.Status.HELD, Booking.Status.PENDING))
+                // Восстановление успело отменить бронирование — подтверждать нечего
+                .flatMap(held -> held.getStatus() == Booking.Status.HELD
+                        ? Mono.just(held)
+                        : Mono.<Booking>error(new IllegalStateException("Бронирование уже " + held.getStatus())))
+                .flatMap(held -> callHotel(roomPath + "/confirm", ref, correlationId)
+                        .then(moveTo(held, Booking.Status.CONFIRMED, Booking.Status.HELD)))
+                .onErrorResume(ex -> {
+                    log.warn("[{}] Booking failed, compensating: {}", correlationId, ex.getMessage());
+                    return callHotel(roomPath + "/release", ref, correlationId)
+                            .onErrorResume(ignored -> Mono.empty())
+                            .then(moveTo(booking, Booking.Status.CANCELLED,
+                                    Booking.Status.PENDING, Booking.Status.HELD));
+                });
+    }
 
-            try {
-                callHotel("/rooms/" + roomId + "/release", Map.of("requestId", requestId), correlationId);
-            } catch (Exception ignored) {}
+    // Условный переход: если статус уже сменил другой участник, возвращается текущее состояние без события
+    private Mono<Booking> moveTo(Booking booking, Booking.Status status, Booking.Status... from) {
+        return blocking(() -> transactionTemplate.execute(tx -> {
+            if (bookingRepository.updateStatus(booking.getId(), List.of(from), status) == 0) {
+                Booking current = bookingRepository.findById(booking.getId()).orElseThrow();
+                log.warn("[{}] Booking already {}, skipping {}", booking.getCorrelationId(), current.getStatus(), status);
+                return current;
+            }
+            booking.setStatus(status);
+            outbox.append(BookingEvent.AGGREGATE, booking.getId(), status.name(), BookingEvent.of(booking));
+            log.info("[{}] Booking {}", booking.getCorrelationId(), status);
+            return booking;
+        }));
+    }
 
-            booking.setStatus(Booking.Status.CANCELLED);
-            bookingRepository.save(booking);
+    // Строка бронирования и событие о новом статусе фиксируются одной транзакцией
+    private Booking save(Booking booking) {
+        return transactionTemplate.execute(status -> {
+            Booking saved = bookingRepository.save(booking);
+            outbox.append(BookingEvent.AGGREGATE, saved.getId(), saved.getStatus().name(), BookingEvent.of(saved));
+            return saved;
+        });
+    }
 
-            log.info("[{}] Booking CANCELLED", correlationId);
+    /**
+     * Бронирования, застрявшие в PENDING/HELD (например, после падения сервиса посреди саги),
+     * компенсируются: удержание снимается, бронирование отменяется.
+     */
+    @Scheduled(fixedDelayString = "${booking.saga.recovery-interval-ms:60000}")
+    public void recoverStaleBookings() {
+        // Компенсация без снятия удержания откладывается до восстановления Hotel Service
+        if (!hotelGuard.isAvailable()) {
+            log.warn("Hotel Service unavailable, stale booking recovery postponed");
+            return;
+        }
+        OffsetDateTime threshold = OffsetDateTime.now().minus(staleAfter);
+        for (Booking booking : bookingRepository.findByStatusInAndCreatedAtBefore(
+                List.of(Booking.Status.PENDING, Booking.Status.HELD), threshold)) {
+            log.warn("[{}] Booking stuck in {}, compensating", booking.getCorrelationId(), booking.getStatus());
+            callHotel("/rooms/" + booking.getRoomId() + "/release",
+                    Map.of("requestId", booking.getRequestId()), booking.getCorrelationId())
+                    .onErrorResume(ignored -> Mono.empty())
+                    .then(moveTo(booking, Booking.Status.CANCELLED, Booking.Status.PENDING, Booking.Status.HELD))
+                    .block(sagaTimeout);
         }
-
-        return booking;
     }
 
-    private void callHotel(String path, Map<String, String> payload, String correlationId) {
-        webClient.post()
+    // Повторы, автомат отключения и ограничение параллелизма — в HotelCallGuard, таймаут — на каждую попытку
+    private Mono<Void> callHotel(String path, Map<String, String> payload, String correlationId) {
+        return hotelGuard.protect(webClient.post()
                 .uri(path)
                 .contentType(MediaType.APPLICATION_JSON)
                 .bodyValue(payload)
                 .header("X-Correlation-Id", correlationId)
                 .retrieve()
                 .bodyToMono(Void.class)
-                .timeout(timeout)
-                .retryWhen(Retry.backoff(retries, Duration.ofMillis(300)))
-                .block(timeout);
+                .timeout(timeout), true);
+    }
+
+    // JPA блокирующий: выполняем на отдельном пуле (виртуальные потоки или boundedElastic), а не на потоках Netty
+    private <T> Mono<T> blocking(Callable<T> action) {
+        return Mono.fromCallable(action).subscribeOn(blockingScheduler);
     }
 
     public List<RoomView> getRoomSuggestions() {
-        List<RoomView> rooms = webClient.get()
-                .uri("/hotels/rooms")
+        return getRoomSuggestions(DEFAULT_SUGGESTIONS);
+    }
+
+    /**
+     * Наименее загруженные номера: Hotel Service сортирует по timesBooked, затем id,
+     * и отдаёт только первую страницу — весь список номеров не передаётся.
+     */
+    public List<RoomView> getRoomSuggestions(int limit) {
+        List<RoomView> rooms = hotelGuard.protect(webClient.get()
+                .uri(uri -> uri.path("/hotels/rooms")
+                        .queryParam("sort", "timesBooked")
+                        .queryParam("size", limit)
+                        .build())
                 .retrieve()
                 .bodyToFlux(RoomView.class)
                 .collectList()
-                .block(timeout);
+                .timeout(timeout), false)
+                .block();
+        return rooms == null ? List.of() : rooms;
+    }
 
-        if (rooms == null) {
-            return List.of();
+    /**
+     * Бронирования пользователя keyset-страницами от новых к старым: стоимость страницы зависит от её размера,
+     * а не от глубины и объёма истории. Курсор — "createdAt_id" последней строки; период — по дате создания,
+     * обе границы включительно.
+     */
+    public BookingPage listUserBookings(Long userId, List<Booking.Status> statuses, LocalDate from, LocalDate to,
+                                        String after, int size) {
+        OffsetDateTime afterCreatedAt = null;
+        Long afterId = null;
+        if (after != null && !after.isBlank()) {
+            int sep = after.lastIndexOf('_');
+            if (sep < 0) {
+                throw new IllegalArgumentException("Некорректный курсор: " + after);
+            }
+            try {
+                afterCreatedAt = Instant.parse(after.substring(0, sep)).atOffset(ZoneOffset.UTC);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Некорректный курсор: " + after, e);
+            }
+            afterId = Long.parseLong(after.substring(sep + 1));
         }
-
-        return rooms.stream()
-                .sorted(
-                        Comparator.comparingLong(RoomView::timesBooked)
-                                .thenComparing(RoomView::id)
-                )
-                .toList();
+        // Лишняя строка показывает, есть ли следующая страница
+        List<BookingSummary> items = bookingRepository.findUserSummaries(userId, statuses,
+                from == null ? null : from.atStartOfDay().atOffset(ZoneOffset.UTC),
+                to == null ? null : to.plusDays(1).atStartOfDay().atOffset(ZoneOffset.UTC),
+                afterCreatedAt, afterId, size + 1);
+        if (items.size() <= size) {
+            return new BookingPage(items, null);
+        }
+        items = items.subList(0, size);
+        BookingSummary last = items.get(size - 1);
+        return new BookingPage(items, last.createdAt().toInstant() + "_" + last.id());
     }
 }
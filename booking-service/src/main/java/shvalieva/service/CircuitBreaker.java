@@ -0,0 +1,141 @@
+package shvalieva.service;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Автомат CLOSED → OPEN → HALF_OPEN по доле неудач в скользящем окне последних windowSize вызовов.
+ * В OPEN вызовы отклоняются без обращения к сервису; через openNanos пропускается не больше
+ * halfOpenProbes пробных вызовов: все успешны — CLOSED с чистым окном, любая неудача — снова OPEN.
+ * Разрешение на вызов — номер перехода, в котором вызов начат: результат вызова, начатого до последнего
+ * перехода (даже если автомат успел вернуться в то же состояние), не учитывается.
+ * Потокобезопасность — через synchronized.
+ */
+public final class CircuitBreaker {
+    public enum State { CLOSED, HALF_OPEN, OPEN }
+
+    // tryAcquire: вызов отклонён
+    public static final long REJECTED = -1;
+
+    private final boolean[] window;
+    private final int minCalls;
+    private final int failureRatePercent;
+    private final long openNanos;
+    private final int halfOpenProbes;
+    private final LongSupplier nanoTime;
+
+    private State state = State.CLOSED;
+    private int position;
+    private int calls;
+    private int failures;
+    private long openedAt;
+    private int probesInFlight;
+    private int probeSuccesses;
+    private long transitions;
+
+    public CircuitBreaker(int windowSize, int minCalls, int failureRatePercent, long openNanos, int halfOpenProbes,
+                          LongSupplier nanoTime) {
+        this.window = new boolean[windowSize];
+        this.minCalls = Math.min(minCalls, windowSize);
+        this.failureRatePercent = failureRatePercent;
+        this.openNanos = openNanos;
+        this.halfOpenProbes = halfOpenProbes;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Разрешение на вызов: номер перехода, в котором вызов начат (его нужно вернуть в onSuccess/onFailure/onCancel),
+     * или REJECTED, если вызов отклонён.
+     */
+    public synchronized long tryAcquire() {
+        if (state == State.OPEN) {
+            if (nanoTime.getAsLong() - openedAt < openNanos) {
+                return REJECTED;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight + probeSuccesses >= halfOpenProbes) {
+                return REJECTED;
+            }
+            probesInFlight++;
+        }
+        return transitions;
+    }
+
+    // Принимает ли автомат новую работу сейчас (OPEN с истёкшим сроком — да, это будут пробные вызовы)
+    public synchronized boolean isCallPermitted() {
+        return state != State.OPEN || nanoTime.getAsLong() - openedAt >= openNanos;
+    }
+
+    public synchronized void onSuccess(long permit) {
+        if (permit != transitions) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            probesInFlight--;
+            if (++probeSuccesses >= halfOpenProbes) {
+                transitionTo(State.CLOSED);
+            }
+        } else {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure(long permit) {
+        if (permit != transitions) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN);
+        } else {
+            record(true);
+            if (calls >= minCalls && failures * 100 >= failureRatePercent * calls) {
+                transitionTo(State.OPEN);
+            }
+        }
+    }
+
+    // Отменённый вызов (таймаут снаружи, отписка) освобождает место пробного, но не считается
+    public synchronized void onCancel(long permit) {
+        if (permit == transitions && state == State.HALF_OPEN) {
+            probesInFlight--;
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public synchronized long transitions() {
+        return transitions;
+    }
+
+    private void record(boolean failed) {
+        if (calls == window.length) {
+            if (window[position]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[position] = failed;
+        if (failed) {
+            failures++;
+        }
+        position = (position + 1) % window.length;
+    }
+
+    private void transitionTo(State next) {
+        transitions++;
+        state = next;
+        probesInFlight = 0;
+        probeSuccesses = 0;
+        if (next == State.OPEN) {
+            openedAt = nanoTime.getAsLong();
+        } else if (next == State.CLOSED) {
+            position = 0;
+            calls = 0;
+            failures = 0;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package shvalieva.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Защита исходящих вызовов Hotel Service: повторы с бюджетом → автомат отключения → ограничение параллелизма.
+ * Каждая попытка отдельно проходит автомат и bulkhead; отклонённая попытка не повторяется.
+ * Неудачей считаются 5xx, таймауты и ошибки соединения; 4xx — ответ работающего сервиса (например, 409
+ * на занятые даты), он не повторяется и не открывает автомат.
+ */
+@Component
+public class HotelCallGuard {
+    private static final Logger log = LoggerFactory.getLogger(HotelCallGuard.class);
+
+    private final CircuitBreaker breaker;
+    private final RetryBudget retryBudget;
+    private final Semaphore bulkhead;
+    private final int maxConcurrent;
+    private final int maxRetries;
+    private final Duration backoff;
+    private final Counter rejectedByBreaker;
+    private final Counter rejectedByBulkhead;
+    private final Counter retries;
+    private final Counter retriesDenied;
+
+    public HotelCallGuard(MeterRegistry meterRegistry,
+                          @Value("${hotel.breaker.window-size:50}") int windowSize,
+                          @Value("${hotel.breaker.min-calls:20}") int minCalls,
+                          @Value("${hotel.breaker.failure-rate-percent:50}") int failureRatePercent,
+                          @Value("${hotel.breaker.open-ms:10000}") long openMs,
+                          @Value("${hotel.breaker.half-open-probes:3}") int halfOpenProbes,
+                          @Value("${hotel.bulkhead.max-concurrent:64}") int maxConcurrent,
+                          @Value("${hotel.retry-budget.ratio:0.2}") double retryRatio,
+                          @Value("${hotel.retry-budget.min-per-second:5}") int minRetriesPerSecond,
+                          @Value("${hotel.retry-budget.window-seconds:10}") int windowSeconds,
+                          @Value("${hotel.retries:3}") int maxRetries,
+                          @Value("${hotel.retry-backoff-ms:300}") long backoffMs) {
+        this.breaker = new CircuitBreaker(windowSize, minCalls, failureRatePercent,
+                TimeUnit.MILLISECONDS.toNanos(openMs), halfOpenProbes, System::nanoTime);
+        this.retryBudget = new RetryBudget(retryRatio, minRetriesPerSecond, windowSeconds, System::nanoTime);
+        this.bulkhead = new Semaphore(maxConcurrent);
+        this.maxConcurrent = maxConcurrent;
+        this.maxRetries = maxRetries;
+        this.backoff = Duration.ofMillis(backoffMs);
+
+        Gauge.builder("booking.hotel.breaker.state", breaker, b -> b.state().ordinal())
+                .description("Hotel circuit breaker state: 0 closed, 1 half-open, 2 open")
+                .register(meterRegistry);
+        Gauge.builder("booking.hotel.breaker.transitions", breaker, CircuitBreaker::transitions)
+                .description("Hotel circuit breaker state changes")
+                .register(meterRegistry);
+        Gauge.builder("booking.hotel.bulkhead.active", bulkhead, s -> maxConcurrent - s.availablePermits())
+                .description("Hotel calls in flight")
+                .register(meterRegistry);
+        this.rejectedByBreaker = Counter.builder("booking.hotel.rejected")
+                .description("Hotel calls rejected without being sent")
+                .tag("reason", "breaker")
+                .register(meterRegistry);
+        this.rejectedByBulkhead = Counter.builder("booking.hotel.rejected")
+                .description("Hotel calls rejected without being sent")
+                .tag("reason", "bulkhead")
+                .register(meterRegistry);
+        this.retries = Counter.builder("booking.hotel.retries")
+                .tag("result", "allowed")
+                .register(meterRegistry);
+        this.retriesDenied = Counter.builder("booking.hotel.retries")
+                .tag("result", "budget_exhausted")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Обёртка вызова: call должен быть ленивым (повторная подписка — новый запрос), таймаут попытки — внутри.
+     */
+    public <T> Mono<T> protect(Mono<T> call, boolean retry) {
+        Mono<T> guarded = Mono.defer(() -> attempt(call));
+        if (!retry || maxRetries <= 0) {
+            return Mono.defer(() -> {
+                retryBudget.onCall();
+                return guarded;
+            });
+        }
+        return Mono.defer(() -> {
+            retryBudget.onCall();
+            return guarded.retryWhen(retry());
+        });
+    }
+
+    // Принимаются ли новые бронирования: при открытом автомате сага даже не начинается
+    public boolean isAvailable() {
+        return breaker.isCallPermitted();
+    }
+
+    public CircuitBreaker.State state() {
+        return breaker.state();
+    }
+
+    private <T> Mono<T> attempt(Mono<T> call) {
+        if (!bulkhead.tryAcquire()) {
+            rejectedByBulkhead.increment();
+            return Mono.error(new HotelUnavailableException("Слишком много параллельных запросов к Hotel Service"));
+        }
+        long permit = breaker.tryAcquire();
+        if (permit == CircuitBreaker.REJECTED) {
+            bulkhead.release();
+            rejectedByBreaker.increment();
+            return Mono.error(new HotelUnavailableException("Hotel Service недоступен"));
+        }
+        return call
+                .doOnSuccess(ignored -> breaker.onSuccess(permit))
+                .doOnError(ex -> {
+                    if (isFailure(ex)) {
+                        onFailure(permit);
+                    } else {
+                        breaker.onSuccess(permit);
+                    }
+                })
+                .doFinally(signal -> {
+                    if (signal == SignalType.CANCEL) {
+                        breaker.onCancel(permit);
+                    }
+                    bulkhead.release();
+                });
+    }
+
+    private void onFailure(long permit) {
+        CircuitBreaker.State before = breaker.state();
+        breaker.onFailure(permit);
+        if (before != CircuitBreaker.State.OPEN && breaker.state() == CircuitBreaker.State.OPEN) {
+            log.warn("Hotel circuit breaker opened");
+        }
+    }
+
+    /*
+     * Экспоненциальный backoff с джиттером до +50%. Номер попытки проверяется до бюджета:
+     * после последней попытки токен бюджета не берётся и повтор не учитывается в метрике.
+     */
+    private Retry retry() {
+        return Retry.from(signals -> signals.concatMap(signal -> {
+            long attempt = signal.totalRetries();
+            if (attempt >= maxRetries || !mayRetry(signal.failure())) {
+                return Mono.error(signal.failure());
+            }
+            Duration delay = backoff.multipliedBy(1L << Math.min(attempt, 30));
+            long jitter = ThreadLocalRandom.current().nextLong(delay.toMillis() / 2 + 1);
+            return Mono.delay(delay.plusMillis(jitter));
+        }));
+    }
+
+    private boolean mayRetry(Throwable ex) {
+        if (ex instanceof HotelUnavailableException || !isFailure(ex)) {
+            return false;
+        }
+        if (retryBudget.tryRetry()) {
+            retries.increment();
+            return true;
+        }
+        retriesDenied.increment();
+        return false;
+    }
+
+    private static boolean isFailure(Throwable ex) {
+        return !(ex instanceof WebClientResponseException response && response.getStatusCode().is4xxClientError());
+    }
+
+    // Вызов не отправлялся: автомат открыт или bulkhead заполнен. Для клиента — 503
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public static class HotelUnavailableException extends IllegalStateException {
+        public HotelUnavailableException(String message) {
+            super(message);
+        }
+    }
+}
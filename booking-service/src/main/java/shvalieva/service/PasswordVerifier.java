@@ -0,0 +1,91 @@
+package shvalieva.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Хэширование и проверка паролей на отдельном ограниченном пуле: не больше threads ядер заняты BCrypt/Argon2,
+ * остальные запросы ждут в очереди queue-capacity. При переполнении вход отклоняется сразу (503),
+ * а не занимает потоки запросов на всё время пика.
+ */
+@Component
+public class PasswordVerifier implements DisposableBean {
+    private final PasswordEncoder encoder;
+    private final ThreadPoolExecutor executor;
+    private final Counter rejected;
+
+    // Результат проверки; upgradedHash — новый хэш, если сохранённый записан устаревшей схемой или параметрами
+    public record Result(boolean matches, String upgradedHash) {}
+
+    public PasswordVerifier(PasswordEncoder encoder,
+                            MeterRegistry meterRegistry,
+                            @Value("${auth.password.threads:0}") int threads,
+                            @Value("${auth.password.queue-capacity:256}") int queueCapacity) {
+        this.encoder = encoder;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), task -> {
+                    Thread thread = new Thread(task, "password-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        Gauge.builder("auth.password.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Password hashing tasks running")
+                .register(meterRegistry);
+        Gauge.builder("auth.password.queued", executor, e -> e.getQueue().size())
+                .description("Password hashing tasks waiting for a thread")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("auth.password.rejected")
+                .description("Password hashing tasks rejected because the queue was full")
+                .register(meterRegistry);
+    }
+
+    public CompletableFuture<Result> verify(String rawPassword, String encodedPassword) {
+        return submit(() -> {
+            boolean matches = encoder.matches(rawPassword, encodedPassword);
+            String upgraded = matches && encoder.upgradeEncoding(encodedPassword) ? encoder.encode(rawPassword) : null;
+            return new Result(matches, upgraded);
+        });
+    }
+
+    public CompletableFuture<String> encode(String rawPassword) {
+        return submit(() -> encoder.encode(rawPassword));
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordVerifierBusyException();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public static class PasswordVerifierBusyException extends IllegalStateException {
+        public PasswordVerifierBusyException() {
+            super("Слишком много одновременных входов, повторите позже");
+        }
+    }
+}
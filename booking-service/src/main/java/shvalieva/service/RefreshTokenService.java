@@ -0,0 +1,120 @@
+package shvalieva.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import shvalieva.entity.RefreshToken;
+import shvalieva.repository.RefreshTokenRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Непрозрачные refresh-токены с хранением на сервере. Проверка — SHA-256 и поиск по уникальному индексу,
+ * без хэширования пароля. Обновление одноразовое (ротация): старый токен отзывается, новый продолжает цепочку.
+ * Отозванные токены остаются в таблице до истечения срока — это список отзыва: повторное предъявление
+ * отозванного токена (утечка или повтор) отзывает всю цепочку.
+ */
+@Service
+public class RefreshTokenService {
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    private final RefreshTokenRepository repository;
+    private final Duration ttl;
+    private final SecureRandom random = new SecureRandom();
+
+    public record Rotation(Long userId, String refreshToken) {}
+
+    public RefreshTokenService(RefreshTokenRepository repository,
+                               @Value("${auth.refresh.ttl-days:30}") long ttlDays) {
+        this.repository = repository;
+        this.ttl = Duration.ofDays(ttlDays);
+    }
+
+    public Duration ttl() {
+        return ttl;
+    }
+
+    // Новая цепочка при входе по паролю
+    @Transactional
+    public String issue(Long userId) {
+        return issue(userId, UUID.randomUUID().toString(), Instant.now());
+    }
+
+    @Transactional(noRollbackFor = BadCredentialsException.class)
+    public Rotation rotate(String refreshToken) {
+        Instant now = Instant.now();
+        RefreshToken current = find(refreshToken);
+        if (current.getRevokedAt() == null && !current.getExpiresAt().isAfter(now)) {
+            throw new BadCredentialsException("Invalid refresh token");
+        }
+        if (current.getRevokedAt() != null || repository.revoke(current.getId(), now) == 0) {
+            int revoked = repository.revokeFamily(current.getFamilyId(), now);
+            log.warn("Revoked refresh token reused for user {}, {} tokens of its family revoked", current.getUserId(), revoked);
+            throw new BadCredentialsException("Invalid refresh token");
+        }
+        return new Rotation(current.getUserId(), issue(current.getUserId(), current.getFamilyId(), now));
+    }
+
+    // Выход: отзывается вся цепочка предъявленного токена; неизвестный токен игнорируется
+    @Transactional
+    public void revoke(String refreshToken) {
+        repository.findByTokenHash(hash(refreshToken))
+                .ifPresent(t -> repository.revokeFamily(t.getFamilyId(), Instant.now()));
+    }
+
+    @Transactional
+    public void revokeAllForUser(Long userId) {
+        repository.revokeAllForUser(userId, Instant.now());
+    }
+
+    @Scheduled(fixedDelayString = "${auth.refresh.cleanup-interval-ms:3600000}")
+    @Transactional
+    public void deleteExpired() {
+        int deleted = repository.deleteExpired(Instant.now());
+        if (deleted > 0) {
+            log.info("Deleted {} expired refresh tokens", deleted);
+        }
+    }
+
+    private RefreshToken find(String refreshToken) {
+        if (refreshToken == null || refreshToken.isBlank()) {
+            throw new BadCredentialsException("Invalid refresh token");
+        }
+        return repository.findByTokenHash(hash(refreshToken))
+                .orElseThrow(() -> new BadCredentialsException("Invalid refresh token"));
+    }
+
+    private String issue(Long userId, String familyId, Instant now) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String value = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        RefreshToken token = new RefreshToken();
+        token.setTokenHash(hash(value));
+        token.setUserId(userId);
+        token.setFamilyId(familyId);
+        token.setCreatedAt(now);
+        token.setExpiresAt(now.plus(ttl));
+        repository.save(token);
+        return value;
+    }
+
+    static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package shvalieva.service;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Бюджет повторов: за последние windowSeconds секунд повторов не больше ratio от числа вызовов
+ * плюс постоянный запас minPerSecond в секунду для редкого трафика. Когда сервис отказывает массово,
+ * повторы перестают умножать нагрузку: на каждый вызов приходится не больше 1 + ratio попыток.
+ * Счётчики ведутся по секундным корзинам кольцевого буфера.
+ */
+public final class RetryBudget {
+    private final double ratio;
+    private final int reserve;
+    private final long[] calls;
+    private final long[] retries;
+    private final long[] seconds;
+    private final LongSupplier nanoTime;
+
+    public RetryBudget(double ratio, int minPerSecond, int windowSeconds, LongSupplier nanoTime) {
+        this.ratio = ratio;
+        this.reserve = minPerSecond * windowSeconds;
+        this.calls = new long[windowSeconds];
+        this.retries = new long[windowSeconds];
+        this.seconds = new long[windowSeconds];
+        this.nanoTime = nanoTime;
+    }
+
+    public synchronized void onCall() {
+        calls[bucket()]++;
+    }
+
+    // true — повтор разрешён и учтён
+    public synchronized boolean tryRetry() {
+        bucket();
+        long totalCalls = 0;
+        long totalRetries = 0;
+        for (int i = 0; i < calls.length; i++) {
+            totalCalls += calls[i];
+            totalRetries += retries[i];
+        }
+        if (totalRetries >= reserve + ratio * totalCalls) {
+            return false;
+        }
+        retries[bucket()]++;
+        return true;
+    }
+
+    // Корзина текущей секунды; корзины, выпавшие из окна, обнуляются при обращении
+    private int bucket() {
+        long second = nanoTime.getAsLong() / 1_000_000_000L;
+        int index = (int) Math.floorMod(second, (long) calls.length);
+        if (seconds[index] != second) {
+            seconds[index] = second;
+            calls[index] = 0;
+            retries[index] = 0;
+        }
+        for (int i = 0; i < seconds.length; i++) {
+            if (second - seconds[i] >= seconds.length) {
+                calls[i] = 0;
+                retries[i] = 0;
+            }
+        }
+        return index;
+    }
+}
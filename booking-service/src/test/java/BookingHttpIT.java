@@ -9,8 +9,13 @@ import org.springframework.boot.test.util.TestPropertyValues;
 import org.springframework.context.ApplicationContextInitializer;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.http.MediaType;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import shvalieva.entity.User;
+import shvalieva.enums.Role;
+import shvalieva.repository.UserRepository;
+import shvalieva.security.common.IdentityHeaders;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
@@ -24,6 +29,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.*;
 @AutoConfigureWebTestClient
 @ContextConfiguration(initializers = BookingHttpIT.WiremockInitializer.class)
 public class BookingHttpIT {
+    private static final String HOP_SECRET = "test-hop-secret-test-hop-secret-0123";
 
     static class WiremockInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
         static WireMockServer wireMockServer = new WireMockServer(0);
@@ -34,7 +40,9 @@ public class BookingHttpIT {
             TestPropertyValues.of(
                     "hotel.base-url=http://localhost:" + port,
                     "hotel.timeout-ms=1000",
-                    "hotel.retries=1"
+                    "hotel.retries=1",
+                    "security.trusted-hop.enabled=true",
+                    "security.trusted-hop.secret=" + HOP_SECRET
             ).applyTo(context.getEnvironment());
         }
     }
@@ -42,6 +50,9 @@ public class BookingHttpIT {
     @Autowired
     private WebTestClient webTestClient;
 
+    @Autowired
+    private UserRepository userRepository;
+
     private String tokenUser() {
         byte[] bytes = "dev-secret-please-change".getBytes(StandardCharsets.UTF_8);
         if (bytes.length < 32) {
@@ -86,4 +97,114 @@ public class BookingHttpIT {
                 .expectStatus().is2xxSuccessful()
                 .expectBody().jsonPath("$.status").isEqualTo("CONFIRMED");
     }
-}
\ No newline at end of file
+
+    @Test
+    void trustedHopIdentityHeaders_AuthenticateWithoutToken() {
+        WiremockInitializer.wireMockServer.stubFor(post(urlPathMatching("/rooms/\\d+/hold")).willReturn(okJson("{}")));
+        WiremockInitializer.wireMockServer.stubFor(post(urlPathMatching("/rooms/\\d+/confirm")).willReturn(okJson("{}")));
+        long exp = Instant.now().plusSeconds(600).getEpochSecond();
+        String signature = IdentityHeaders.sign(HOP_SECRET, "101", "USER", exp);
+
+        webTestClient.post().uri("/bookings")
+                .header(IdentityHeaders.SUBJECT, "101")
+                .header(IdentityHeaders.SCOPE, "USER")
+                .header(IdentityHeaders.EXPIRES, String.valueOf(exp))
+                .header(IdentityHeaders.SIGNATURE, signature)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{" +
+                        "\"roomId\":1," +
+                        "\"startDate\":\"2025-11-20\"," +
+                        "\"endDate\":\"2025-11-22\"," +
+                        "\"requestId\":\"" + UUID.randomUUID() + "\"}")
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBody().jsonPath("$.userId").isEqualTo(101);
+
+        // Подменённый subject с чужой подписью не принимается
+        webTestClient.get().uri("/bookings")
+                .header(IdentityHeaders.SUBJECT, "102")
+                .header(IdentityHeaders.SCOPE, "USER")
+                .header(IdentityHeaders.EXPIRES, String.valueOf(exp))
+                .header(IdentityHeaders.SIGNATURE, signature)
+                .exchange()
+                .expectStatus().isUnauthorized();
+    }
+
+    @Test
+    void login_UpgradesLegacyHashAndRejectsWrongPassword() {
+        // Хэш из версии до DelegatingPasswordEncoder: без префикса схемы и с cost 4
+        User legacy = new User();
+        legacy.setUsername("legacy-" + UUID.randomUUID().toString().substring(0, 8));
+        legacy.setPassword(new BCryptPasswordEncoder(4).encode("secret-pass"));
+        legacy.setRole(Role.USER);
+        Long id = userRepository.save(legacy).getId();
+
+        webTestClient.post().uri("/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("username", legacy.getUsername(), "password", "secret-pass"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.access_token").isNotEmpty();
+        String upgraded = userRepository.findById(id).orElseThrow().getPassword();
+        Assertions.assertTrue(upgraded.startsWith("{bcrypt}$2a$10$"), upgraded);
+
+        // Повторный вход — по новому хэшу из кэша учётных данных
+        webTestClient.post().uri("/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("username", legacy.getUsername(), "password", "secret-pass"))
+                .exchange()
+                .expectStatus().isOk();
+        Assertions.assertEquals(upgraded, userRepository.findById(id).orElseThrow().getPassword());
+
+        webTestClient.post().uri("/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("username", legacy.getUsername(), "password", "wrong"))
+                .exchange()
+                .expectStatus().isUnauthorized();
+    }
+
+    private String refreshToken(String uri, Map<String, String> body, int expectedStatus) {
+        WebTestClient.ResponseSpec response = webTestClient.post().uri(uri)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isEqualTo(expectedStatus);
+        if (expectedStatus != 200) {
+            return null;
+        }
+        Map<?, ?> tokens = response.expectBody(Map.class).returnResult().getResponseBody();
+        Assertions.assertNotNull(tokens.get("access_token"));
+        return (String) tokens.get("refresh_token");
+    }
+
+    @Test
+    void refreshToken_RotatesAndReuseRevokesFamily() {
+        String username = "refresh-" + UUID.randomUUID().toString().substring(0, 8);
+        webTestClient.post().uri("/auth/register")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("username", username, "password", "secret-pass"))
+                .exchange()
+                .expectStatus().isOk();
+        Map<String, String> credentials = Map.of("username", username, "password", "secret-pass");
+
+        String first = refreshToken("/auth/login", credentials, 200);
+        String second = refreshToken("/auth/refresh", Map.of("refresh_token", first), 200);
+        Assertions.assertNotEquals(first, second);
+
+        // Повтор уже обменянного токена отзывает всю цепочку, включая выданный взамен
+        refreshToken("/auth/refresh", Map.of("refresh_token", first), 401);
+        refreshToken("/auth/refresh", Map.of("refresh_token", second), 401);
+
+        // Выход отзывает токен, другая цепочка (новый вход) не затрагивается
+        String third = refreshToken("/auth/login", credentials, 200);
+        String other = refreshToken("/auth/login", credentials, 200);
+        webTestClient.post().uri("/auth/logout")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("refresh_token", third))
+                .exchange()
+                .expectStatus().isNoContent();
+        refreshToken("/auth/refresh", Map.of("refresh_token", third), 401);
+        refreshToken("/auth/refresh", Map.of("refresh_token", other), 200);
+        refreshToken("/auth/refresh", Map.of("refresh_token", "unknown"), 401);
+    }
+}
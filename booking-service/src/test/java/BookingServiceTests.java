@@ -1,18 +1,32 @@
 import com.github.tomakehurst.wiremock.WireMockServer;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.util.TestPropertyValues;
 import org.springframework.context.ApplicationContextInitializer;
 import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ContextConfiguration;
+import shvalieva.dto.BookingExportFilter;
+import shvalieva.dto.BookingPage;
+import shvalieva.dto.BookingSummary;
 import shvalieva.dto.RoomView;
 import shvalieva.entity.Booking;
+import shvalieva.outbox.InMemoryOutboxSink;
+import shvalieva.outbox.OutboxEvent;
+import shvalieva.outbox.OutboxRelay;
 import shvalieva.repository.BookingRepository;
+import shvalieva.service.BookingExportService;
 import shvalieva.service.BookingService;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 
@@ -44,6 +58,21 @@ class BookingServiceTests {
     @Autowired
     BookingRepository bookingRepository;
 
+    @Autowired
+    BookingExportService exportService;
+
+    @Autowired
+    OutboxRelay outboxRelay;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    InMemoryOutboxSink outboxSink;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
     @BeforeEach
     void resetWiremock() {
         WiremockInitializer.wireMockServer.resetAll();
@@ -72,6 +101,45 @@ class BookingServiceTests {
         Assertions.assertEquals(Booking.Status.CONFIRMED, booking.getStatus());
     }
 
+    @Test
+    void sagaStepsRelayedThroughOutbox() {
+        stubFor(post(urlPathMatching("/rooms/\\d+/hold"))
+                .willReturn(okJson("{}")));
+        stubFor(post(urlPathMatching("/rooms/\\d+/confirm"))
+                .willReturn(okJson("{}")));
+
+        Booking booking = bookingService.createBooking(
+                4L, 13L,
+                LocalDate.now(),
+                LocalDate.now().plusDays(1),
+                "req-outbox"
+        );
+        outboxRelay.drain();
+
+        List<String> statuses = outboxSink.recent().stream()
+                .filter(e -> e.getAggregateId().equals(String.valueOf(booking.getId())))
+                .map(OutboxEvent::getEventType)
+                .toList();
+        Assertions.assertEquals(List.of("PENDING", "HELD", "CONFIRMED"), statuses);
+    }
+
+    @Test
+    void hotelCallsUseDedicatedPoolWithMetrics() {
+        stubFor(post(urlPathMatching("/rooms/\\d+/hold"))
+                .willReturn(okJson("{}")));
+        stubFor(post(urlPathMatching("/rooms/\\d+/confirm"))
+                .willReturn(okJson("{}")));
+
+        bookingService.createBooking(5L, 14L, LocalDate.now(), LocalDate.now().plusDays(1), "req-pool");
+
+        for (String gauge : List.of("active.connections", "idle.connections", "pending.connections")) {
+            Assertions.assertNotNull(meterRegistry.find("reactor.netty.connection.provider." + gauge)
+                    .tag("name", "hotel").gauge(), gauge);
+        }
+        Assertions.assertEquals(200.0, meterRegistry.find("reactor.netty.connection.provider.max.connections")
+                .tag("name", "hotel").gauge().value());
+    }
+
     @Test
     void failureFlow_cancelledWithCompensation() {
         stubFor(post(urlPathMatching("/rooms/\\d+/hold"))
@@ -135,18 +203,141 @@ class BookingServiceTests {
     @Test
     void suggestions_sorted() {
         WiremockInitializer.wireMockServer.stubFor(
-                get(urlEqualTo("/hotels/rooms"))
+                get(urlPathEqualTo("/hotels/rooms"))
+                        .withQueryParam("sort", equalTo("timesBooked"))
+                        .withQueryParam("size", equalTo("10"))
                         .willReturn(okJson("""
                                 [
-                                  {"id":1,"number":"101","timesBooked":5},
-                                  {"id":2,"number":"102","timesBooked":1}
+                                  {"id":2,"number":"102","timesBooked":1},
+                                  {"id":1,"number":"101","timesBooked":5}
                                 ]
                                 """))
         );
 
-        List<RoomView> result = bookingService.getRoomSuggestions();
+        // сортировка и ограничение выполняются на стороне Hotel Service
+        List<RoomView> result = bookingService.getRoomSuggestions(10);
 
         Assertions.assertEquals(2, result.size());
         Assertions.assertEquals(2L, result.get(0).id());
     }
+
+    @Test
+    void export_filtersByStatusAndResumesAfterId() throws Exception {
+        List<Long> confirmed = new ArrayList<>();
+        for (Booking.Status status : List.of(Booking.Status.CONFIRMED, Booking.Status.CANCELLED, Booking.Status.CONFIRMED)) {
+            Booking b = new Booking();
+            b.setRequestId("exp-" + status + "-" + confirmed.size());
+            b.setUserId(1L);
+            b.setRoomId(10L);
+            b.setStartDate(LocalDate.now());
+            b.setEndDate(LocalDate.now().plusDays(1));
+            b.setStatus(status);
+            b.setCreatedAt(OffsetDateTime.now());
+            b = bookingRepository.save(b);
+            if (status == Booking.Status.CONFIRMED) {
+                confirmed.add(b.getId());
+            }
+        }
+        BookingExportFilter filter = new BookingExportFilter(
+                LocalDate.now().minusDays(1), LocalDate.now().plusDays(1), List.of(Booking.Status.CONFIRMED), null);
+
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        Assertions.assertEquals(2, exportService.export(filter, BookingExportService.Format.CSV, csv));
+        String[] lines = csv.toString(StandardCharsets.UTF_8).split("\n");
+        Assertions.assertEquals(3, lines.length);
+        Assertions.assertTrue(lines[1].startsWith(confirmed.get(0) + ","));
+
+        // продолжение после первой строки
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        BookingExportFilter resumed = new BookingExportFilter(null, null, filter.statuses(), confirmed.get(0));
+        Assertions.assertEquals(1, exportService.export(resumed, BookingExportService.Format.NDJSON, ndjson));
+        Assertions.assertTrue(ndjson.toString(StandardCharsets.UTF_8).contains("\"id\":" + confirmed.get(1)));
+
+        // период без бронирований
+        BookingExportFilter past = new BookingExportFilter(
+                LocalDate.now().minusDays(10), LocalDate.now().minusDays(5), null, null);
+        Assertions.assertEquals(0, exportService.export(past, BookingExportService.Format.NDJSON, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void userBookingsPagedByKeysetWithFilters() {
+        OffsetDateTime base = OffsetDateTime.parse("2030-01-01T00:00:00Z");
+        List<Booking> saved = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Booking b = new Booking();
+            b.setUserId(7L);
+            b.setRoomId(100L + i);
+            b.setRequestId("page-" + i);
+            b.setStartDate(LocalDate.of(2030, 2, 1));
+            b.setEndDate(LocalDate.of(2030, 2, 2));
+            b.setStatus(i % 2 == 0 ? Booking.Status.CONFIRMED : Booking.Status.CANCELLED);
+            // две брони с одинаковым createdAt: порядок внутри — по id
+            b.setCreatedAt(base.plusDays(i == 5 ? 4 : i));
+            saved.add(bookingRepository.save(b));
+        }
+        Booking other = new Booking();
+        other.setUserId(8L);
+        other.setRequestId("page-other");
+        other.setStatus(Booking.Status.CONFIRMED);
+        other.setCreatedAt(base.plusDays(3));
+        bookingRepository.save(other);
+
+        List<Long> ids = new ArrayList<>();
+        String after = null;
+        int pages = 0;
+        do {
+            BookingPage page = bookingService.listUserBookings(7L, null, null, null, after, 3);
+            page.items().forEach(b -> ids.add(b.id()));
+            after = page.next();
+            pages++;
+        } while (after != null);
+        Assertions.assertEquals(4, pages);
+        List<Long> expected = saved.stream()
+                .sorted((a, b) -> a.getCreatedAt().isEqual(b.getCreatedAt())
+                        ? Long.compare(b.getId(), a.getId())
+                        : b.getCreatedAt().compareTo(a.getCreatedAt()))
+                .map(Booking::getId)
+                .toList();
+        Assertions.assertEquals(expected, ids);
+
+        // Фильтр статуса и периода создания (границы включительно): CONFIRMED, созданные 3–7 января, — i = 2, 4, 6
+        BookingPage filtered = bookingService.listUserBookings(7L, List.of(Booking.Status.CONFIRMED),
+                LocalDate.of(2030, 1, 3), LocalDate.of(2030, 1, 7), null, 10);
+        Assertions.assertEquals(List.of(106L, 104L, 102L),
+                filtered.items().stream().map(BookingSummary::roomId).toList());
+        Assertions.assertNull(filtered.next());
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> bookingService.listUserBookings(7L, null, null, null, "garbage", 3));
+
+        // Страница читается по индексу (user_id, created_at, id), а не сканированием таблицы
+        String plan = jdbcTemplate.queryForObject("explain select id from booking where user_id = 7"
+                + " and (created_at < ? or (created_at = ? and id < ?)) order by created_at desc, id desc limit 4",
+                String.class, base, base, 1L);
+        Assertions.assertTrue(plan.toUpperCase().contains("IDX_BOOKING_USER_CREATED"), plan);
+    }
+
+    @Test
+    void staleRecoveryDoesNotOverwriteSagaThatFinished() throws Exception {
+        Booking stuck = new Booking();
+        stuck.setRequestId("req-stale");
+        stuck.setUserId(9L);
+        stuck.setRoomId(19L);
+        stuck.setStartDate(LocalDate.now());
+        stuck.setEndDate(LocalDate.now().plusDays(1));
+        stuck.setStatus(Booking.Status.HELD);
+        stuck.setCorrelationId("stale");
+        stuck.setCreatedAt(OffsetDateTime.now().minusDays(1));
+        Long id = bookingRepository.save(stuck).getId();
+
+        // Пока восстановление ждёт ответа на release, живая сага успевает подтвердить бронирование
+        stubFor(post(urlPathMatching("/rooms/\\d+/release"))
+                .willReturn(okJson("{}").withFixedDelay(500)));
+        CompletableFuture<Void> recovery = CompletableFuture.runAsync(bookingService::recoverStaleBookings);
+        Thread.sleep(100);
+        jdbcTemplate.update("update booking set status = 'CONFIRMED' where id = ?", id);
+        recovery.get();
+
+        Assertions.assertEquals(Booking.Status.CONFIRMED, bookingRepository.findById(id).orElseThrow().getStatus());
+    }
 }
@@ -0,0 +1,152 @@
+import com.github.tomakehurst.wiremock.WireMockServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import shvalieva.entity.Booking;
+import shvalieva.repository.BookingRepository;
+import shvalieva.service.BookingService;
+import shvalieva.service.CircuitBreaker;
+import shvalieva.service.HotelCallGuard;
+
+import java.time.LocalDate;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+
+/**
+ * Автомат отключения и бюджет повторов вызовов Hotel Service. Каждый тест получает свой контекст,
+ * а с ним — новый HotelCallGuard: состояние автомата и бюджета не переходит между тестами.
+ */
+@SpringBootTest
+@ContextConfiguration(initializers = HotelCallGuardTests.WiremockInitializer.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class HotelCallGuardTests {
+
+    static class WiremockInitializer
+            implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+        static final WireMockServer wireMockServer = new WireMockServer(0);
+
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            if (!wireMockServer.isRunning()) {
+                wireMockServer.start();
+                configureFor("localhost", wireMockServer.port());
+            }
+
+            TestPropertyValues.of(
+                    "hotel.base-url=http://localhost:" + wireMockServer.port(),
+                    "hotel.timeout-ms=1000",
+                    "hotel.retries=1",
+                    "hotel.breaker.window-size=10",
+                    "hotel.breaker.min-calls=4",
+                    "hotel.breaker.open-ms=500",
+                    "hotel.breaker.half-open-probes=2"
+            ).applyTo(context.getEnvironment());
+        }
+    }
+
+    @Autowired
+    BookingService bookingService;
+
+    @Autowired
+    BookingRepository bookingRepository;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    HotelCallGuard hotelGuard;
+
+    @BeforeEach
+    void resetWiremock() {
+        WiremockInitializer.wireMockServer.resetAll();
+        bookingRepository.deleteAll();
+    }
+
+    @AfterAll
+    static void shutdown() {
+        WiremockInitializer.wireMockServer.stop();
+    }
+
+    @Test
+    void breakerOpensFailsFastAndRecoversAfterProbes() throws Exception {
+        stubFor(post(urlPathMatching("/rooms/\\d+/hold"))
+                .willReturn(serverError()));
+        stubFor(post(urlPathMatching("/rooms/\\d+/release"))
+                .willReturn(okJson("{}")));
+
+        // 2 неудачных hold + успешный release, затем ещё одна неудача: 3 из 4 — автомат открыт
+        LocalDate start = LocalDate.now();
+        Assertions.assertEquals(Booking.Status.CANCELLED,
+                bookingService.createBooking(6L, 15L, start, start.plusDays(1), "req-cb-1").getStatus());
+        Assertions.assertEquals(Booking.Status.CANCELLED,
+                bookingService.createBooking(6L, 15L, start, start.plusDays(1), "req-cb-2").getStatus());
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, hotelGuard.state());
+        verify(3, postRequestedFor(urlPathMatching("/rooms/\\d+/hold")));
+
+        // Открытый автомат: бронирование отклоняется без обращения к Hotel Service
+        Assertions.assertThrows(HotelCallGuard.HotelUnavailableException.class,
+                () -> bookingService.createBooking(6L, 15L, start, start.plusDays(1), "req-cb-3"));
+        Assertions.assertTrue(bookingRepository.findByRequestId("req-cb-3").isEmpty());
+        verify(3, postRequestedFor(urlPathMatching("/rooms/\\d+/hold")));
+        Assertions.assertEquals(2.0, meterRegistry.get("booking.hotel.breaker.state").gauge().value());
+        Assertions.assertTrue(meterRegistry.get("booking.hotel.rejected").tag("reason", "breaker")
+                .counter().count() > 0);
+
+        // После open-ms пробные hold и confirm проходят, автомат закрывается
+        Thread.sleep(600);
+        stubFor(post(urlPathMatching("/rooms/\\d+/hold"))
+                .willReturn(okJson("{}")));
+        stubFor(post(urlPathMatching("/rooms/\\d+/confirm"))
+                .willReturn(okJson("{}")));
+        Assertions.assertEquals(Booking.Status.CONFIRMED,
+                bookingService.createBooking(6L, 15L, start, start.plusDays(1), "req-cb-4").getStatus());
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, hotelGuard.state());
+    }
+
+    @Test
+    void lastAttemptDoesNotSpendRetryBudget() {
+        stubFor(post(urlPathMatching("/rooms/\\d+/hold"))
+                .willReturn(serverError()));
+        stubFor(post(urlPathMatching("/rooms/\\d+/release"))
+                .willReturn(okJson("{}")));
+
+        bookingService.createBooking(7L, 16L, LocalDate.now(), LocalDate.now().plusDays(1), "req-budget");
+
+        // hotel.retries=1: одна неудачная попытка повторяется, последняя — нет
+        verify(2, postRequestedFor(urlPathMatching("/rooms/\\d+/hold")));
+        Assertions.assertEquals(1.0, meterRegistry.get("booking.hotel.retries").tag("result", "allowed")
+                .counter().count());
+        Assertions.assertEquals(0.0, meterRegistry.get("booking.hotel.retries").tag("result", "budget_exhausted")
+                .counter().count());
+    }
+
+    @Test
+    void breakerIgnoresResultsFromEarlierTransitions() {
+        long[] now = {0};
+        CircuitBreaker breaker = new CircuitBreaker(4, 2, 50, 100, 1, () -> now[0]);
+
+        long closedCall = breaker.tryAcquire();
+        breaker.onFailure(breaker.tryAcquire());
+        breaker.onFailure(breaker.tryAcquire());
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        now[0] = 100;
+        long staleProbe = breaker.tryAcquire();
+        breaker.onCancel(staleProbe);
+        breaker.onSuccess(breaker.tryAcquire());
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+        // Вызов из прошлого CLOSED не попадает в новое окно, пробный из прошлого HALF_OPEN ничего не меняет
+        breaker.onFailure(closedCall);
+        breaker.onSuccess(staleProbe);
+        breaker.onFailure(breaker.tryAcquire());
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+}
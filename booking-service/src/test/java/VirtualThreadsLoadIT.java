@@ -0,0 +1,132 @@
+import com.sun.net.httpserver.HttpServer;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import shvalieva.BookingServiceApplication;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Нагрузочное сравнение платформенных и виртуальных потоков.
+ * Hotel Service отвечает с задержкой, запрос /bookings/suggestions блокируется на WebClient.
+ * Сравнивается не пропускная способность, а пик одновременных вызовов Hotel Service: в платформенном
+ * режиме он не выше числа потоков Tomcat, в виртуальном — выше, и от скорости машины это не зависит.
+ * Запуск: mvn -pl booking-service test -Dtest=VirtualThreadsLoadIT
+ */
+public class VirtualThreadsLoadIT {
+
+    private static final String SECRET = "load-test-secret-load-test-secret!";
+    private static final int TOMCAT_THREADS = 16;
+    private static final int CONCURRENCY = 200;
+    private static final int REQUESTS = 1000;
+    private static final int HOTEL_DELAY_MS = 500;
+
+    static HttpServer hotel;
+    static final AtomicInteger inFlight = new AtomicInteger();
+    static final AtomicInteger peak = new AtomicInteger();
+
+    @BeforeAll
+    static void startHotel() throws Exception {
+        hotel = HttpServer.create(new InetSocketAddress("localhost", 0), CONCURRENCY);
+        hotel.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        hotel.createContext("/hotels/rooms", exchange -> {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(HOTEL_DELAY_MS);
+                byte[] body = "[{\"id\":1,\"number\":\"101\",\"timesBooked\":1}]".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                exchange.sendResponseHeaders(503, -1);
+            } finally {
+                inFlight.decrementAndGet();
+                exchange.close();
+            }
+        });
+        hotel.start();
+    }
+
+    @AfterAll
+    static void stopHotel() {
+        hotel.stop(0);
+    }
+
+    @Test
+    void virtualThreadsExceedPlatformPoolConcurrency() throws Exception {
+        // В платформенном режиме каждый вызов Hotel Service держит поток Tomcat;
+        // виртуальный режим ограничен только CONCURRENCY
+        int platform = peakConcurrency(false);
+        int virtual = peakConcurrency(true);
+        Assertions.assertTrue(platform <= TOMCAT_THREADS,
+                () -> "platform peak " + platform + " above Tomcat pool " + TOMCAT_THREADS);
+        Assertions.assertTrue(virtual >= TOMCAT_THREADS * 2,
+                () -> "virtual peak " + virtual + " does not beat Tomcat pool " + TOMCAT_THREADS);
+    }
+
+    private int peakConcurrency(boolean virtualThreads) throws Exception {
+        try (ConfigurableApplicationContext ctx = new SpringApplicationBuilder(BookingServiceApplication.class)
+                .run(
+                        "--server.port=0",
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--server.tomcat.threads.max=" + TOMCAT_THREADS,
+                        "--spring.jpa.show-sql=false",
+                        "--eureka.client.enabled=false",
+                        "--hotel.base-url=http://localhost:" + hotel.getAddress().getPort(),
+                        // Ограничитель параллельных вызовов не должен стать потолком раньше потоков
+                        "--hotel.bulkhead.max-concurrent=" + CONCURRENCY,
+                        "--security.jwt.secret=" + SECRET)) {
+            int port = ctx.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/bookings/suggestions"))
+                    .header("Authorization", "Bearer " + token())
+                    .GET()
+                    .build();
+            ExecutorService clients = Executors.newFixedThreadPool(CONCURRENCY);
+            HttpClient http = HttpClient.newBuilder().executor(clients).build();
+            try {
+                load(http, request, CONCURRENCY); // прогрев
+                peak.set(0);
+                load(http, request, REQUESTS);
+                return peak.get();
+            } finally {
+                clients.shutdownNow();
+            }
+        }
+    }
+
+    private static void load(HttpClient http, HttpRequest request, int total) {
+        List<CompletableFuture<HttpResponse<Void>>> inFlight = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            inFlight.add(http.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+        }
+        inFlight.forEach(f -> Assertions.assertEquals(200, f.join().statusCode()));
+    }
+
+    private static String token() {
+        Instant now = Instant.now();
+        return Jwts.builder()
+                .setSubject("1")
+                .addClaims(Map.of("scope", "USER"))
+                .setIssuedAt(Date.from(now))
+                .setExpiration(Date.from(now.plusSeconds(3600)))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .compact();
+    }
+}
@@ -0,0 +1,182 @@
+package shvalieva.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Кэш GET-ответов каталога отелей на шлюзе. Ключ — область доступа (scope из JWT), путь и query.
+ * Повторное чтение отдаётся из памяти без обращения к hotel-service; If-None-Match с совпадающим
+ * ETag получает 304. Записи живут не дольше TTL и сбрасываются по ленте изменений каталога
+ * ({@link CatalogChangePoller}) и после любых изменяющих запросов к /hotels и /rooms через шлюз
+ * (удержания и подтверждения меняют timesBooked в ответах каталога).
+ */
+@Component
+public class CatalogCacheFilter implements GlobalFilter, Ordered {
+    static final String CACHE_HEADER = "X-Cache";
+
+    // Заголовки, относящиеся к конкретному ответу или соединению, в кэш не попадают
+    private static final Set<String> NOT_CACHED_HEADERS = Set.of(
+            HttpHeaders.CONTENT_LENGTH, HttpHeaders.TRANSFER_ENCODING, HttpHeaders.CONNECTION,
+            HttpHeaders.DATE, HttpHeaders.SET_COOKIE, "X-Correlation-Id", CACHE_HEADER);
+
+    private final ResponseCache cache;
+    private final boolean enabled;
+    private final int maxEntryBytes;
+    private final List<PathPattern> cachedPaths;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter notModified;
+
+    public CatalogCacheFilter(ResponseCache cache, MeterRegistry meterRegistry,
+                              @Value("${gateway.cache.enabled:true}") boolean enabled,
+                              @Value("${gateway.cache.max-entry-bytes:262144}") int maxEntryBytes,
+                              @Value("${gateway.cache.paths:/hotels,/hotels/{id:\\d+},/hotels/rooms}") String[] paths) {
+        this.cache = cache;
+        this.enabled = enabled;
+        this.maxEntryBytes = maxEntryBytes;
+        this.cachedPaths = Arrays.stream(paths)
+                .map(String::trim)
+                .map(PathPatternParser.defaultInstance::parse)
+                .toList();
+        this.hits = Counter.builder("gateway.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("gateway.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.notModified = Counter.builder("gateway.cache.requests").tag("result", "not_modified").register(meterRegistry);
+    }
+
+    // Раньше NettyWriteResponseFilter, чтобы обёртка ответа увидела тело, и раньше AdaptiveConcurrencyFilter,
+    // чтобы попадание в кэш не занимало место у бэкенда
+    @Override
+    public int getOrder() {
+        return NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 2;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!enabled) {
+            return chain.filter(exchange);
+        }
+        ServerHttpRequest request = exchange.getRequest();
+        String path = request.getPath().value();
+        if (!HttpMethod.GET.equals(request.getMethod())) {
+            if (changesCatalog(path) && !HttpMethod.HEAD.equals(request.getMethod())) {
+                // Изменение каталога через шлюз: сбрасываем сразу, не дожидаясь ленты изменений
+                return chain.filter(exchange).doFinally(signal -> cache.invalidateAll());
+            }
+            return chain.filter(exchange);
+        }
+        PathContainer container = PathContainer.parsePath(path);
+        if (cachedPaths.stream().noneMatch(p -> p.matches(container))) {
+            return chain.filter(exchange);
+        }
+        return exchange.getPrincipal()
+                .map(principal -> principal instanceof JwtAuthenticationToken jwt
+                        ? String.valueOf(jwt.getToken().getClaimAsString("scope"))
+                        : principal.getName())
+                .defaultIfEmpty("anonymous")
+                .flatMap(scope -> {
+                    String query = request.getURI().getRawQuery();
+                    String key = scope + ' ' + path + (query == null ? "" : '?' + query);
+                    ResponseCache.Entry entry = cache.get(key);
+                    if (entry != null) {
+                        return serve(exchange, entry);
+                    }
+                    misses.increment();
+                    long generation = cache.generation();
+                    return chain.filter(exchange.mutate()
+                            .response(capture(exchange.getResponse(), key, path, generation,
+                                    request.getHeaders().getIfNoneMatch()))
+                            .build());
+                });
+    }
+
+    private static boolean changesCatalog(String path) {
+        return path.startsWith("/hotels") || path.startsWith("/rooms");
+    }
+
+    private Mono<Void> serve(ServerWebExchange exchange, ResponseCache.Entry entry) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.getHeaders().addAll(entry.headers());
+        response.getHeaders().setETag(entry.etag());
+        response.getHeaders().set(CACHE_HEADER, "HIT");
+        List<String> ifNoneMatch = exchange.getRequest().getHeaders().getIfNoneMatch();
+        if (ifNoneMatch.contains(entry.etag()) || ifNoneMatch.contains("*")) {
+            notModified.increment();
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            return response.setComplete();
+        }
+        hits.increment();
+        response.setStatusCode(HttpStatus.OK);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(entry.body())));
+    }
+
+    private ServerHttpResponse capture(ServerHttpResponse original, String key, String path, long generation,
+                                       List<String> ifNoneMatch) {
+        return new ServerHttpResponseDecorator(original) {
+            @Override
+            public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                if (!HttpStatus.OK.equals(getStatusCode())) {
+                    return super.writeWith(body);
+                }
+                return DataBufferUtils.join(body)
+                        .map(joined -> {
+                            byte[] bytes = new byte[joined.readableByteCount()];
+                            joined.read(bytes);
+                            DataBufferUtils.release(joined);
+                            return bytes;
+                        })
+                        .defaultIfEmpty(new byte[0])
+                        .flatMap(bytes -> {
+                            HttpHeaders headers = getHeaders();
+                            String etag = headers.getETag();
+                            if (etag == null) {
+                                etag = '"' + DigestUtils.md5DigestAsHex(bytes) + '"';
+                                headers.setETag(etag);
+                            }
+                            if (bytes.length <= maxEntryBytes) {
+                                HttpHeaders stored = new HttpHeaders();
+                                headers.forEach((name, values) -> {
+                                    if (NOT_CACHED_HEADERS.stream().noneMatch(name::equalsIgnoreCase)) {
+                                        stored.addAll(name, values);
+                                    }
+                                });
+                                cache.put(key, generation, path, HttpHeaders.readOnlyHttpHeaders(stored), bytes, etag);
+                            }
+                            headers.set(CACHE_HEADER, "MISS");
+                            if (ifNoneMatch.contains(etag)) {
+                                // Тело у клиента уже есть, даже если бэкенд не поддерживает условные запросы
+                                notModified.increment();
+                                setStatusCode(HttpStatus.NOT_MODIFIED);
+                                return setComplete();
+                            }
+                            return super.writeWith(Mono.just(bufferFactory().wrap(bytes)));
+                        });
+            }
+        };
+    }
+}
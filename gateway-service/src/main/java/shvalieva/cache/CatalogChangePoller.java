@@ -0,0 +1,86 @@
+package shvalieva.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.loadbalancer.reactive.ReactorLoadBalancerExchangeFilterFunction;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Опрашивает ленту изменений каталога hotel-service (/hotels/changes) и сбрасывает затронутые записи кэша:
+ * списки отелей и номеров, а также карточку изменённого отеля. При потере непрерывности
+ * (рестарт hotel-service, пропущенные версии, восстановление после недоступности ленты) кэш сбрасывается целиком.
+ */
+@Component
+public class CatalogChangePoller {
+    private static final Logger log = LoggerFactory.getLogger(CatalogChangePoller.class);
+
+    record CatalogChange(long version, String type, Long hotelId, Long roomId) {}
+
+    record CatalogChanges(String epoch, long version, boolean reset, List<CatalogChange> changes) {}
+
+    private final ResponseCache cache;
+    private final WebClient webClient;
+    private final Duration timeout;
+    private String epoch;
+    private long version;
+    private boolean failed;
+
+    public CatalogChangePoller(ResponseCache cache,
+                               WebClient.Builder webClientBuilder,
+                               ObjectProvider<ReactorLoadBalancerExchangeFilterFunction> loadBalancer,
+                               @Value("${gateway.cache.changes.base-url:http://hotel-service}") String baseUrl,
+                               @Value("${gateway.cache.changes.timeout-ms:2000}") long timeoutMs) {
+        this.cache = cache;
+        WebClient.Builder builder = webClientBuilder.clone().baseUrl(baseUrl);
+        // Имя сервиса разрешается через discovery, если балансировщик доступен
+        loadBalancer.ifAvailable(builder::filter);
+        this.webClient = builder.build();
+        this.timeout = Duration.ofMillis(timeoutMs);
+    }
+
+    @Scheduled(fixedDelayString = "${gateway.cache.changes.poll-interval-ms:2000}")
+    public synchronized void poll() {
+        CatalogChanges response;
+        try {
+            response = webClient.get()
+                    .uri(uri -> uri.path("/hotels/changes")
+                            .queryParamIfPresent("epoch", Optional.ofNullable(epoch))
+                            .queryParam("after", version)
+                            .build())
+                    .retrieve()
+                    .bodyToMono(CatalogChanges.class)
+                    .block(timeout);
+        } catch (RuntimeException e) {
+            if (!failed) {
+                log.warn("Catalog change feed unavailable, cache will be reset on recovery: {}", e.getMessage());
+            }
+            failed = true;
+            return;
+        }
+        if (response == null) {
+            return;
+        }
+        if (response.reset() || failed) {
+            cache.invalidateAll();
+        } else {
+            for (CatalogChange change : response.changes()) {
+                String hotelPath = change.hotelId() == null ? null : "/hotels/" + change.hotelId();
+                cache.invalidate(path -> path.equals("/hotels")
+                        || path.startsWith("/hotels/rooms")
+                        || hotelPath == null
+                        || path.equals(hotelPath));
+            }
+        }
+        failed = false;
+        epoch = response.epoch();
+        version = response.version();
+    }
+}
@@ -0,0 +1,74 @@
+package shvalieva.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Ограниченный кэш ответов: LRU по числу записей плюс TTL каждой записи.
+ * generation растёт при каждой инвалидации — ответ, запрошенный до неё, в кэш уже не попадёт.
+ */
+@Component
+public class ResponseCache {
+
+    public record Entry(String path, HttpHeaders headers, byte[] body, String etag, long expiresAt) {}
+
+    private final int maxEntries;
+    private final long ttlMs;
+    private final Map<String, Entry> entries;
+    private long generation;
+
+    public ResponseCache(MeterRegistry meterRegistry,
+                         @Value("${gateway.cache.max-entries:10000}") int maxEntries,
+                         @Value("${gateway.cache.ttl-ms:30000}") long ttlMs) {
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ResponseCache.this.maxEntries;
+            }
+        };
+        Gauge.builder("gateway.cache.size", this, ResponseCache::size).register(meterRegistry);
+    }
+
+    // Свежая запись или null; просроченная удаляется
+    public synchronized Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt() <= System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    public synchronized long generation() {
+        return generation;
+    }
+
+    public synchronized void put(String key, long expectedGeneration, String path, HttpHeaders headers, byte[] body, String etag) {
+        if (generation == expectedGeneration) {
+            entries.put(key, new Entry(path, headers, body, etag, System.currentTimeMillis() + ttlMs));
+        }
+    }
+
+    public synchronized void invalidate(Predicate<String> path) {
+        generation++;
+        entries.values().removeIf(e -> path.test(e.path()));
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
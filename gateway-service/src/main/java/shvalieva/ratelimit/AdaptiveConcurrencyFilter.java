@@ -0,0 +1,122 @@
+package shvalieva.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Адаптивное ограничение параллелизма перед маршрутами к сервисам (по умолчанию схема lb://):
+ * свой {@link AimdLimit} на сервис ({@link Services#of}). При перегрузке бэкенда предел снижается,
+ * и лишние запросы получают 429 сразу, а не таймаут в очереди соединений.
+ * Фильтр стоит снаружи NettyWriteResponseFilter: место занято, пока тело ответа не передано клиенту,
+ * поэтому длинные потоковые выгрузки (NDJSON/CSV) учитываются в пределе. Задержка для AIMD — до первого
+ * байта ответа (фиксации заголовков), и такие выгрузки не считаются медленными из-за длины тела.
+ * Метрики gateway.concurrency.limit, gateway.concurrency.inflight, gateway.concurrency.rejected с тегом route.
+ */
+@Component
+public class AdaptiveConcurrencyFilter implements GlobalFilter, Ordered {
+    private static final Set<HttpStatusCode> OVERLOAD = Set.of(
+            HttpStatus.BAD_GATEWAY, HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.GATEWAY_TIMEOUT);
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Set<String> schemes;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private final Map<String, AimdLimit> limits = new ConcurrentHashMap<>();
+
+    public AdaptiveConcurrencyFilter(MeterRegistry meterRegistry,
+                                     @Value("${gateway.concurrency.enabled:true}") boolean enabled,
+                                     @Value("${gateway.concurrency.schemes:lb}") String[] schemes,
+                                     @Value("${gateway.concurrency.initial-limit:20}") int initialLimit,
+                                     @Value("${gateway.concurrency.min-limit:1}") int minLimit,
+                                     @Value("${gateway.concurrency.max-limit:200}") int maxLimit,
+                                     @Value("${gateway.concurrency.backoff-ratio:0.9}") double backoffRatio,
+                                     @Value("${gateway.concurrency.latency-threshold-ms:2000}") long latencyThresholdMs) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.schemes = Arrays.stream(schemes).map(String::trim).collect(Collectors.toSet());
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+    }
+
+    // После кэша ответов (запрос, отданный из кэша, не занимает место у бэкенда), но раньше записи тела
+    @Override
+    public int getOrder() {
+        return NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (!enabled || route == null || !schemes.contains(route.getUri().getScheme())) {
+            return chain.filter(exchange);
+        }
+        String service = Services.of(route);
+        AimdLimit limit = limits.computeIfAbsent(service, this::newLimit);
+        if (!limit.tryAcquire()) {
+            meterRegistry.counter("gateway.concurrency.rejected", "route", service).increment();
+            exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+            exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+            return exchange.getResponse().setComplete();
+        }
+        long start = System.nanoTime();
+        AtomicLong firstByte = new AtomicLong();
+        exchange.getResponse().beforeCommit(() -> {
+            firstByte.compareAndSet(0, System.nanoTime());
+            return Mono.empty();
+        });
+        return chain.filter(exchange).doFinally(signal -> {
+            // Статус может быть не выставлен, а Set.of не принимает null в contains
+            HttpStatusCode status = exchange.getResponse().getStatusCode();
+            if (signal == SignalType.CANCEL) {
+                limit.onIgnored();
+            } else if (signal == SignalType.ON_ERROR || status != null && OVERLOAD.contains(status)) {
+                limit.onDropped();
+            } else {
+                long committed = firstByte.get();
+                limit.onSuccess((committed != 0 ? committed : System.nanoTime()) - start);
+            }
+        });
+    }
+
+    private AimdLimit newLimit(String service) {
+        AimdLimit limit = new AimdLimit(initialLimit, minLimit, maxLimit, backoffRatio, latencyThresholdNanos);
+        Gauge.builder("gateway.concurrency.limit", limit, AimdLimit::limit)
+                .tag("route", service)
+                .register(meterRegistry);
+        Gauge.builder("gateway.concurrency.inflight", limit, AimdLimit::inFlight)
+                .tag("route", service)
+                .register(meterRegistry);
+        Counter.builder("gateway.concurrency.rejected").tag("route", service).register(meterRegistry);
+        return limit;
+    }
+}
@@ -0,0 +1,62 @@
+package shvalieva.ratelimit;
+
+/**
+ * Адаптивный предел параллельных запросов (AIMD). Успешный быстрый ответ при загрузке не меньше
+ * половины предела увеличивает его на 1/limit (примерно +1 за «окно» ответов), перегрузка — ответ
+ * медленнее порога, 502/503/504 или ошибка соединения — умножает его на backoffRatio.
+ * Запрос сверх предела не ждёт, а сразу отклоняется.
+ */
+final class AimdLimit {
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private double limit;
+    private int inFlight;
+
+    AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long latencyThresholdNanos) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.limit = initialLimit;
+    }
+
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    synchronized void onSuccess(long rttNanos) {
+        if (rttNanos > latencyThresholdNanos) {
+            onDropped();
+            return;
+        }
+        // Без нагрузки предел не растёт, иначе после простоя он пропустит всплеск целиком
+        if (inFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        inFlight--;
+    }
+
+    synchronized void onDropped() {
+        limit = Math.max(minLimit, limit * backoffRatio);
+        inFlight--;
+    }
+
+    // Отменённый клиентом запрос ничего не говорит о нагрузке
+    synchronized void onIgnored() {
+        inFlight--;
+    }
+
+    synchronized int limit() {
+        return (int) limit;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+}
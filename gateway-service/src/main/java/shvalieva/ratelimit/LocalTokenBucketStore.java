@@ -0,0 +1,76 @@
+package shvalieva.ratelimit;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Корзины в памяти шлюза: лимит действует на каждый экземпляр отдельно.
+ * Корзина, которая успела наполниться, ничем не отличается от новой, поэтому такие удаляются фоновой задачей.
+ */
+@Component
+@ConditionalOnProperty(name = "gateway.rate-limit.store", havingValue = "memory", matchIfMissing = true)
+public class LocalTokenBucketStore implements TokenBucketStore {
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public LocalTokenBucketStore(MeterRegistry meterRegistry) {
+        Gauge.builder("gateway.ratelimit.buckets", buckets, Map::size)
+                .description("Token buckets held in gateway memory")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Decision> tryConsume(String key, int capacity, double refillPerSecond) {
+        return Mono.just(consume(key, capacity, refillPerSecond));
+    }
+
+    public Decision consume(String key, int capacity, double refillPerSecond) {
+        long now = System.nanoTime();
+        return buckets.computeIfAbsent(key, k -> new Bucket(capacity, refillPerSecond, now)).consume(now);
+    }
+
+    @Scheduled(fixedDelayString = "${gateway.rate-limit.sweep-interval-ms:60000}")
+    public void sweep() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    private static final class Bucket {
+        private final int capacity;
+        private final double refillPerNano;
+        private double tokens;
+        private long refilledAt;
+
+        Bucket(int capacity, double refillPerSecond, long now) {
+            this.capacity = capacity;
+            this.refillPerNano = refillPerSecond / 1e9;
+            this.tokens = capacity;
+            this.refilledAt = now;
+        }
+
+        synchronized Decision consume(long now) {
+            refill(now);
+            if (tokens >= 1) {
+                tokens -= 1;
+                return new Decision(true, (long) tokens, 0);
+            }
+            return new Decision(false, 0, (long) Math.ceil((1 - tokens) / refillPerNano / 1e6));
+        }
+
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * refillPerNano);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package shvalieva.ratelimit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Ограничение частоты запросов на шлюзе: корзина токенов на пару (пользователь, сервис).
+ * Пользователь — sub из JWT, для анонимных запросов (/auth/**) — адрес клиента.
+ * Сервис — id из lb://-адреса маршрута, для прочих маршрутов — id маршрута ({@link Services#of}).
+ * Лимиты — gateway.rate-limit.routes в виде service=capacity/refillPerSecond,
+ * остальные получают лимит по умолчанию. Превышение — 429 с Retry-After.
+ */
+@Component
+public class RateLimitFilter implements GlobalFilter, Ordered {
+    static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+
+    private record Limit(int capacity, double refillPerSecond) {}
+
+    private final TokenBucketStore store;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Limit defaultLimit;
+    private final Map<String, Limit> routeLimits = new HashMap<>();
+
+    public RateLimitFilter(TokenBucketStore store, MeterRegistry meterRegistry,
+                           @Value("${gateway.rate-limit.enabled:true}") boolean enabled,
+                           @Value("${gateway.rate-limit.default-capacity:100}") int defaultCapacity,
+                           @Value("${gateway.rate-limit.default-refill-per-second:50}") double defaultRefill,
+                           @Value("${gateway.rate-limit.routes:}") String[] routes) {
+        this.store = store;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.defaultLimit = new Limit(defaultCapacity, defaultRefill);
+        for (String route : routes) {
+            if (route.isBlank()) {
+                continue;
+            }
+            String[] idAndLimit = route.trim().split("=", 2);
+            String[] parts = idAndLimit.length == 2 ? idAndLimit[1].split("/", 2) : new String[0];
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("gateway.rate-limit.routes: ожидается service=capacity/refill, получено " + route);
+            }
+            routeLimits.put(idAndLimit[0].trim(), new Limit(Integer.parseInt(parts[0].trim()),
+                    Double.parseDouble(parts[1].trim())));
+        }
+    }
+
+    // До кэша ответов: попадание в кэш тоже расходует токен
+    @Override
+    public int getOrder() {
+        return -100;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (!enabled || route == null) {
+            return chain.filter(exchange);
+        }
+        String service = Services.of(route);
+        Limit limit = routeLimits.getOrDefault(service, defaultLimit);
+        return exchange.getPrincipal()
+                .map(principal -> principal instanceof JwtAuthenticationToken jwt
+                        ? "sub:" + jwt.getToken().getSubject()
+                        : "user:" + principal.getName())
+                .switchIfEmpty(Mono.fromSupplier(() -> "ip:" + clientAddress(exchange)))
+                .flatMap(client -> store.tryConsume(client + '|' + service, limit.capacity(), limit.refillPerSecond()))
+                .flatMap(decision -> {
+                    ServerHttpResponse response = exchange.getResponse();
+                    response.getHeaders().set(REMAINING_HEADER, String.valueOf(decision.remaining()));
+                    meterRegistry.counter("gateway.ratelimit.requests", "route", service,
+                            "result", decision.allowed() ? "allowed" : "rejected").increment();
+                    if (decision.allowed()) {
+                        return chain.filter(exchange);
+                    }
+                    response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+                    response.getHeaders().set(HttpHeaders.RETRY_AFTER,
+                            String.valueOf(Math.max(1, (decision.retryAfterMs() + 999) / 1000)));
+                    return response.setComplete();
+                });
+    }
+
+    private static String clientAddress(ServerWebExchange exchange) {
+        InetSocketAddress address = exchange.getRequest().getRemoteAddress();
+        return address == null || address.getAddress() == null ? "unknown" : address.getAddress().getHostAddress();
+    }
+}
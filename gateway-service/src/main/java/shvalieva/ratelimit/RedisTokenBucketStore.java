@@ -0,0 +1,86 @@
+package shvalieva.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Общие корзины в Redis (gateway.rate-limit.store=redis): лимит один на все экземпляры шлюза.
+ * Пополнение и списание — один Lua-скрипт, атомарно и по часам Redis, а не экземпляров.
+ * Если Redis не ответил за timeout-ms, решение принимает корзина в памяти этого экземпляра:
+ * ограничение ослабевает, но не превращается в отказ всех запросов.
+ */
+@Component
+@ConditionalOnProperty(name = "gateway.rate-limit.store", havingValue = "redis")
+public class RedisTokenBucketStore implements TokenBucketStore {
+    private static final Logger log = LoggerFactory.getLogger(RedisTokenBucketStore.class);
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SCRIPT = RedisScript.of("""
+            local capacity = tonumber(ARGV[1])
+            local rate = tonumber(ARGV[2])
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+            local tokens = tonumber(state[1]) or capacity
+            local ts = tonumber(state[2]) or now
+            tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate / 1000)
+            local allowed = 0
+            if tokens >= 1 then
+              tokens = tokens - 1
+              allowed = 1
+            end
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now)
+            redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate * 1000) + 1000)
+            return {allowed, math.floor(tokens), math.ceil((1 - tokens) * 1000 / rate)}
+            """, List.class);
+
+    private final ReactiveStringRedisTemplate redis;
+    private final LocalTokenBucketStore fallback;
+    private final Duration timeout;
+    private final Counter fallbacks;
+
+    public RedisTokenBucketStore(ReactiveStringRedisTemplate redis, MeterRegistry meterRegistry,
+                                 @Value("${gateway.rate-limit.redis.timeout-ms:100}") long timeoutMs) {
+        this.redis = redis;
+        this.fallback = new LocalTokenBucketStore(meterRegistry);
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.fallbacks = Counter.builder("gateway.ratelimit.redis.fallbacks")
+                .description("Rate limit decisions taken locally because Redis did not answer")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Decision> tryConsume(String key, int capacity, double refillPerSecond) {
+        return redis.execute(SCRIPT, List.of("ratelimit:" + key),
+                        List.of(String.valueOf(capacity), String.valueOf(refillPerSecond)))
+                .next()
+                .map(result -> {
+                    boolean allowed = ((Number) result.get(0)).longValue() == 1;
+                    long remaining = ((Number) result.get(1)).longValue();
+                    return new Decision(allowed, remaining, allowed ? 0 : ((Number) result.get(2)).longValue());
+                })
+                .timeout(timeout)
+                .onErrorResume(ex -> {
+                    fallbacks.increment();
+                    log.debug("Redis rate limit store unavailable: {}", ex.toString());
+                    return Mono.just(fallback.consume(key, capacity, refillPerSecond));
+                });
+    }
+
+    @Scheduled(fixedDelayString = "${gateway.rate-limit.sweep-interval-ms:60000}")
+    public void sweepFallback() {
+        fallback.sweep();
+    }
+}
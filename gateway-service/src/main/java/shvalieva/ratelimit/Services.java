@@ -0,0 +1,18 @@
+package shvalieva.ratelimit;
+
+import org.springframework.cloud.gateway.route.Route;
+
+final class Services {
+    private Services() {
+    }
+
+    /**
+     * Сервис, к которому ведёт маршрут: для lb:// — его id в discovery, иначе id маршрута.
+     * Лимиты считаются по сервису, поэтому любой маршрут к нему (в том числе созданный
+     * discovery locator) расходует тот же бюджет.
+     */
+    static String of(Route route) {
+        String host = route.getUri().getHost();
+        return "lb".equals(route.getUri().getScheme()) && host != null ? host : route.getId();
+    }
+}
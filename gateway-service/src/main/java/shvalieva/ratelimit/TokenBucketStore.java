@@ -0,0 +1,14 @@
+package shvalieva.ratelimit;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Хранилище корзин токенов. Корзина вмещает capacity токенов и пополняется на refillPerSecond в секунду;
+ * каждый запрос забирает один токен. Реализации: в памяти шлюза и общая в Redis для нескольких экземпляров.
+ */
+public interface TokenBucketStore {
+
+    record Decision(boolean allowed, long remaining, long retryAfterMs) {}
+
+    Mono<Decision> tryConsume(String key, int capacity, double refillPerSecond);
+}
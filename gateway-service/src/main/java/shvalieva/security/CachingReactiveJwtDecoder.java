@@ -0,0 +1,35 @@
+package shvalieva.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Mono;
+import shvalieva.security.common.VerifiedJwtCache;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Реактивный декодер шлюза поверх {@link VerifiedJwtCache}.
+ */
+public class CachingReactiveJwtDecoder implements ReactiveJwtDecoder {
+    private final ReactiveJwtDecoder delegate;
+    private final VerifiedJwtCache cache;
+
+    public CachingReactiveJwtDecoder(ReactiveJwtDecoder delegate, int maxEntries, Duration maxTtl, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.cache = new VerifiedJwtCache(maxEntries, maxTtl, meterRegistry);
+    }
+
+    @Override
+    public Mono<Jwt> decode(String token) throws JwtException {
+        String key = VerifiedJwtCache.key(token);
+        Instant now = Instant.now();
+        Jwt cached = cache.get(key, now);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return delegate.decode(token).doOnNext(jwt -> cache.put(key, jwt, now));
+    }
+}
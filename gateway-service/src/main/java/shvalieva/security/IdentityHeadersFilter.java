@@ -0,0 +1,70 @@
+package shvalieva.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import shvalieva.security.common.IdentityHeaders;
+
+/**
+ * Передача проверенной личности сервисам ({@link IdentityHeaders}) при security.trusted-hop.enabled=true:
+ * сервисы принимают её без повторной проверки JWT. Одноимённые заголовки от клиента всегда удаляются.
+ */
+@Component
+public class IdentityHeadersFilter implements GlobalFilter, Ordered {
+    private final boolean enabled;
+    private final String secret;
+
+    public IdentityHeadersFilter(@Value("${security.trusted-hop.enabled:false}") boolean enabled,
+                                 @Value("${security.trusted-hop.secret:}") String secret) {
+        this.enabled = enabled;
+        this.secret = enabled ? IdentityHeaders.requireSecret(secret) : secret;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest stripped = exchange.getRequest().mutate()
+                .headers(headers -> {
+                    headers.remove(IdentityHeaders.SUBJECT);
+                    headers.remove(IdentityHeaders.SCOPE);
+                    headers.remove(IdentityHeaders.EXPIRES);
+                    headers.remove(IdentityHeaders.SIGNATURE);
+                })
+                .build();
+        ServerWebExchange clean = exchange.mutate().request(stripped).build();
+        if (!enabled) {
+            return chain.filter(clean);
+        }
+        return clean.getPrincipal()
+                .filter(JwtAuthenticationToken.class::isInstance)
+                .map(principal -> ((JwtAuthenticationToken) principal).getToken())
+                .filter(jwt -> jwt.getSubject() != null && jwt.getExpiresAt() != null)
+                .map(jwt -> withIdentity(clean, jwt))
+                .defaultIfEmpty(clean)
+                .flatMap(chain::filter);
+    }
+
+    private ServerWebExchange withIdentity(ServerWebExchange exchange, Jwt jwt) {
+        String scope = jwt.getClaimAsString("scope");
+        String subject = jwt.getSubject();
+        long expires = jwt.getExpiresAt().getEpochSecond();
+        String signed = IdentityHeaders.sign(secret, subject, scope == null ? "" : scope, expires);
+        return exchange.mutate().request(exchange.getRequest().mutate()
+                .header(IdentityHeaders.SUBJECT, subject)
+                .header(IdentityHeaders.SCOPE, scope == null ? "" : scope)
+                .header(IdentityHeaders.EXPIRES, String.valueOf(expires))
+                .header(IdentityHeaders.SIGNATURE, signed)
+                .build()).build();
+    }
+}
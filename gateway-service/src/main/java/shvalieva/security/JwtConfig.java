@@ -1,18 +1,27 @@
 package shvalieva.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
 import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
 import javax.crypto.SecretKey;
+import java.time.Duration;
 
 @Configuration
 public class JwtConfig {
 
+    // cache.max-entries=0 — без кэша проверенных токенов
     @Bean
-    public ReactiveJwtDecoder reactiveJwtDecoder(@Value("${security.jwt.secret:dev-secret-please-change}") String secret) {
+    public ReactiveJwtDecoder reactiveJwtDecoder(@Value("${security.jwt.secret:dev-secret-please-change}") String secret,
+                                                 @Value("${security.jwt.cache.max-entries:10000}") int cacheMaxEntries,
+                                                 @Value("${security.jwt.cache.max-ttl-seconds:300}") long cacheMaxTtlSeconds,
+                                                 MeterRegistry meterRegistry) {
         SecretKey key = JwtSecretKeyProvider.getHmacKey(secret);
-        return NimbusReactiveJwtDecoder.withSecretKey(key).build();
+        ReactiveJwtDecoder decoder = NimbusReactiveJwtDecoder.withSecretKey(key).build();
+        return cacheMaxEntries > 0
+                ? new CachingReactiveJwtDecoder(decoder, cacheMaxEntries, Duration.ofSeconds(cacheMaxTtlSeconds), meterRegistry)
+                : decoder;
     }
 }
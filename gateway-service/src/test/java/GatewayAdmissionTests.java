@@ -0,0 +1,258 @@
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import shvalieva.ratelimit.AdaptiveConcurrencyFilter;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+
+@SpringBootTest(classes = shvalieva.GatewayServiceApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ContextConfiguration(initializers = GatewayAdmissionTests.WiremockInitializer.class)
+public class GatewayAdmissionTests {
+
+    static class WiremockInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        static WireMockServer wireMockServer = new WireMockServer(0);
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            wireMockServer.start();
+            int port = wireMockServer.port();
+            TestPropertyValues.of(
+                    "spring.cloud.gateway.routes[0].id=mock-limited",
+                    "spring.cloud.gateway.routes[0].uri=http://localhost:" + port,
+                    "spring.cloud.gateway.routes[0].predicates[0]=Path=/limited/**",
+                    "spring.cloud.gateway.routes[1].id=mock-slow",
+                    "spring.cloud.gateway.routes[1].uri=http://localhost:" + port,
+                    "spring.cloud.gateway.routes[1].predicates[0]=Path=/slow/**",
+                    "spring.cloud.gateway.routes[2].id=mock-stream",
+                    "spring.cloud.gateway.routes[2].uri=http://localhost:" + port,
+                    "spring.cloud.gateway.routes[2].predicates[0]=Path=/stream/**",
+                    "gateway.rate-limit.routes=mock-limited=2/0.01",
+                    // в тесте маршруты ведут на http://, а не lb://
+                    "gateway.concurrency.schemes=http",
+                    "gateway.concurrency.initial-limit=1",
+                    "gateway.concurrency.max-limit=1",
+                    "gateway.cache.changes.poll-interval-ms=3600000"
+            ).applyTo(context.getEnvironment());
+        }
+    }
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    void setup() {
+        WiremockInitializer.wireMockServer.resetAll();
+        WiremockInitializer.wireMockServer.stubFor(get(urlEqualTo("/limited/1"))
+                .willReturn(okJson("{}")));
+        WiremockInitializer.wireMockServer.stubFor(get(urlEqualTo("/slow/1"))
+                .willReturn(okJson("{}").withFixedDelay(1000)));
+        // Заголовки сразу, тело частями в течение 2 с — как у потоковой выгрузки
+        WiremockInitializer.wireMockServer.stubFor(get(urlEqualTo("/stream/1"))
+                .willReturn(aResponse().withStatus(200).withBody("{}\n{}\n{}\n{}\n")
+                        .withChunkedDribbleDelay(4, 2000)));
+    }
+
+    @AfterAll
+    static void shutdown() {
+        WiremockInitializer.wireMockServer.stop();
+    }
+
+    private static String token(String subject) throws Exception {
+        byte[] key = new byte[32];
+        byte[] secret = "dev-secret-please-change".getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(secret, 0, key, 0, secret.length);
+        Instant now = Instant.now();
+        SignedJWT jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256), new JWTClaimsSet.Builder()
+                .subject(subject)
+                .claim("scope", "USER")
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plusSeconds(3600)))
+                .build());
+        jwt.sign(new MACSigner(key));
+        return jwt.serialize();
+    }
+
+    private WebTestClient.ResponseSpec request(String uri, String token) {
+        return webTestClient.get().uri(uri)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                .exchange();
+    }
+
+    @Test
+    void tokenBucketPerSubjectAndRoute() throws Exception {
+        String first = token("101");
+        request("/limited/1", first).expectStatus().isOk().expectHeader().valueEquals("X-RateLimit-Remaining", "1");
+        request("/limited/1", first).expectStatus().isOk();
+        request("/limited/1", first).expectStatus().isEqualTo(429).expectHeader().exists(HttpHeaders.RETRY_AFTER);
+
+        // Другой пользователь — своя корзина
+        request("/limited/1", token("102")).expectStatus().isOk();
+        WiremockInitializer.wireMockServer.verify(3, getRequestedFor(urlEqualTo("/limited/1")));
+    }
+
+    @Test
+    void concurrencyAboveLimitIsShedWith429() throws Exception {
+        WebTestClient client = webTestClient.mutate().responseTimeout(Duration.ofSeconds(10)).build();
+        String bearer = "Bearer " + token("201");
+        List<HttpStatusCode> statuses = Flux.range(0, 2)
+                .flatMap(i -> Mono.fromCallable(() -> client.get().uri("/slow/1")
+                                .header(HttpHeaders.AUTHORIZATION, bearer)
+                                .exchange()
+                                .returnResult(String.class)
+                                .getStatus())
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .collectList()
+                .block();
+
+        Assertions.assertTrue(statuses.contains(HttpStatusCode.valueOf(200)), statuses.toString());
+        Assertions.assertTrue(statuses.contains(HttpStatusCode.valueOf(429)), statuses.toString());
+        WiremockInitializer.wireMockServer.verify(1, getRequestedFor(urlEqualTo("/slow/1")));
+    }
+
+    @Test
+    void concurrencySlotHeldUntilStreamedBodyIsWritten() throws Exception {
+        WebTestClient client = webTestClient.mutate().responseTimeout(Duration.ofSeconds(10)).build();
+        String bearer = "Bearer " + token("301");
+        Mono<HttpStatusCode> streaming = Mono.fromCallable(() -> client.get().uri("/stream/1")
+                        .header(HttpHeaders.AUTHORIZATION, bearer)
+                        .exchange()
+                        .expectBody(String.class)
+                        .returnResult()
+                        .getStatus())
+                .subscribeOn(Schedulers.boundedElastic())
+                .cache();
+        streaming.subscribe();
+
+        // Заголовки первого ответа уже отданы, тело ещё передаётся: место занято
+        Thread.sleep(500);
+        request("/stream/1", token("302")).expectStatus().isEqualTo(429);
+        Assertions.assertEquals(HttpStatusCode.valueOf(200), streaming.block(Duration.ofSeconds(10)));
+        WiremockInitializer.wireMockServer.verify(1, getRequestedFor(urlEqualTo("/stream/1")));
+    }
+
+    @Test
+    void concurrencyLatencyMeasuredToFirstByte() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AdaptiveConcurrencyFilter filter = new AdaptiveConcurrencyFilter(registry, true, new String[]{"http"},
+                4, 1, 4, 0.5, 100);
+
+        // Заголовки сразу, тело дольше порога — как у потоковой выгрузки: предел не снижается
+        double inFlightDuringBody = exchangeThrough(filter, registry, "stream", Duration.ZERO, Duration.ofMillis(300));
+        Assertions.assertEquals(4, limit(registry, "stream"));
+        // Пока тело передаётся, запрос занимает место
+        Assertions.assertEquals(1, inFlightDuringBody);
+
+        // Первый байт позже порога — медленный ответ
+        exchangeThrough(filter, registry, "slow-first-byte", Duration.ofMillis(300), Duration.ZERO);
+        Assertions.assertEquals(2, limit(registry, "slow-first-byte"));
+    }
+
+    /*
+     * Фильтр проходит в том же порядке, что и в шлюзе: маршрутизация выставляет статус после headersDelay,
+     * тело пишет стадия с порядком NettyWriteResponseFilter уже после завершения маршрутизации.
+     * Возвращает число запросов в полёте перед последним фрагментом тела.
+     */
+    private static double exchangeThrough(AdaptiveConcurrencyFilter filter, SimpleMeterRegistry registry,
+                                        String routeId, Duration headersDelay, Duration bodyDelay) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/export"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, Route.async()
+                .id(routeId)
+                .uri(URI.create("http://localhost"))
+                .predicate(e -> true)
+                .build());
+        double[] inFlightDuringBody = new double[1];
+        List<GlobalFilter> filters = new ArrayList<>(List.of(
+                filter,
+                new Stage(NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER, (ex, chain) -> chain.filter(ex)
+                        .then(Mono.defer(() -> ex.getResponse().writeWith(Flux.concat(
+                                Mono.fromSupplier(() -> chunk(ex)),
+                                Mono.delay(bodyDelay).map(i -> {
+                                    inFlightDuringBody[0] = inFlight(registry, routeId);
+                                    return chunk(ex);
+                                })))))),
+                new Stage(Ordered.LOWEST_PRECEDENCE, (ex, chain) -> Mono.delay(headersDelay).then())));
+        AnnotationAwareOrderComparator.sort(filters);
+        chain(filters, 0).filter(exchange).block(Duration.ofSeconds(5));
+        // doFinally срабатывает уже после того, как block() получил завершение
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (inFlight(registry, routeId) > 0) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "request still in flight");
+            Thread.onSpinWait();
+        }
+        return inFlightDuringBody[0];
+    }
+
+    private static double inFlight(SimpleMeterRegistry registry, String route) {
+        return registry.get("gateway.concurrency.inflight").tag("route", route).gauge().value();
+    }
+
+    private static GatewayFilterChain chain(List<GlobalFilter> filters, int index) {
+        return exchange -> index < filters.size()
+                ? filters.get(index).filter(exchange, chain(filters, index + 1))
+                : Mono.empty();
+    }
+
+    private static final class Stage implements GlobalFilter, Ordered {
+        private final int order;
+        private final BiFunction<ServerWebExchange, GatewayFilterChain, Mono<Void>> body;
+
+        Stage(int order, BiFunction<ServerWebExchange, GatewayFilterChain, Mono<Void>> body) {
+            this.order = order;
+            this.body = body;
+        }
+
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+            return body.apply(exchange, chain);
+        }
+
+        @Override
+        public int getOrder() {
+            return order;
+        }
+    }
+
+    private static DataBuffer chunk(ServerWebExchange exchange) {
+        return exchange.getResponse().bufferFactory().wrap("{}\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static double limit(SimpleMeterRegistry registry, String route) {
+        return registry.get("gateway.concurrency.limit").tag("route", route).gauge().value();
+    }
+}
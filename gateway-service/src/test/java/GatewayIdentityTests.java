@@ -0,0 +1,125 @@
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import shvalieva.security.IdentityHeadersFilter;
+import shvalieva.security.common.IdentityHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+
+@SpringBootTest(classes = shvalieva.GatewayServiceApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ContextConfiguration(initializers = GatewayIdentityTests.WiremockInitializer.class)
+public class GatewayIdentityTests {
+    private static final String HOP_SECRET = "test-hop-secret-test-hop-secret-0123";
+
+    static class WiremockInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        static WireMockServer wireMockServer = new WireMockServer(0);
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            wireMockServer.start();
+            int port = wireMockServer.port();
+            TestPropertyValues.of(
+                    "spring.cloud.gateway.routes[0].id=mock-identity",
+                    "spring.cloud.gateway.routes[0].uri=http://localhost:" + port,
+                    "spring.cloud.gateway.routes[0].predicates[0]=Path=/identity/**",
+                    "security.trusted-hop.enabled=true",
+                    "security.trusted-hop.secret=" + HOP_SECRET,
+                    "gateway.cache.changes.poll-interval-ms=3600000"
+            ).applyTo(context.getEnvironment());
+        }
+    }
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setup() {
+        WiremockInitializer.wireMockServer.resetAll();
+        WiremockInitializer.wireMockServer.stubFor(get(urlEqualTo("/identity/1"))
+                .willReturn(okJson("{}")));
+    }
+
+    @AfterAll
+    static void shutdown() {
+        WiremockInitializer.wireMockServer.stop();
+    }
+
+    private static String token(String subject, Instant expiresAt) throws Exception {
+        byte[] key = new byte[32];
+        byte[] secret = "dev-secret-please-change".getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(secret, 0, key, 0, secret.length);
+        SignedJWT jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256), new JWTClaimsSet.Builder()
+                .subject(subject)
+                .claim("scope", "USER")
+                .issueTime(new Date())
+                .expirationTime(Date.from(expiresAt))
+                .build());
+        jwt.sign(new MACSigner(key));
+        return jwt.serialize();
+    }
+
+    private double cacheCount(String result) {
+        return meterRegistry.get("security.jwt.cache").tag("result", result).counter().count();
+    }
+
+    @Test
+    void signedIdentityForwardedAndSpoofedHeadersDropped() throws Exception {
+        long exp = Instant.now().plusSeconds(3600).getEpochSecond();
+        webTestClient.get().uri("/identity/1")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token("301", Instant.ofEpochSecond(exp)))
+                .header(IdentityHeaders.SUBJECT, "1")
+                .header(IdentityHeaders.SIGNATURE, "forged")
+                .exchange()
+                .expectStatus().isOk();
+
+        WiremockInitializer.wireMockServer.verify(1, getRequestedFor(urlEqualTo("/identity/1"))
+                .withHeader(IdentityHeaders.SUBJECT, equalTo("301"))
+                .withHeader(IdentityHeaders.SCOPE, equalTo("USER"))
+                .withHeader(IdentityHeaders.EXPIRES, equalTo(String.valueOf(exp)))
+                .withHeader(IdentityHeaders.SIGNATURE, equalTo(IdentityHeaders.sign(HOP_SECRET, "301", "USER", exp))));
+    }
+
+    @Test
+    void verifiedTokenDecodedOncePerCacheEntry() throws Exception {
+        String bearer = "Bearer " + token("302", Instant.now().plusSeconds(3600));
+        double hits = cacheCount("hit");
+        double misses = cacheCount("miss");
+        for (int i = 0; i < 3; i++) {
+            webTestClient.get().uri("/identity/1")
+                    .header(HttpHeaders.AUTHORIZATION, bearer)
+                    .exchange()
+                    .expectStatus().isOk();
+        }
+        Assertions.assertEquals(misses + 1, cacheCount("miss"));
+        Assertions.assertEquals(hits + 2, cacheCount("hit"));
+    }
+
+    @Test
+    void trustedHopRefusesPlaceholderOrShortSecret() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new IdentityHeadersFilter(true, "dev-internal-secret-please-change"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new IdentityHeadersFilter(true, "short-secret"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new IdentityHeadersFilter(true, ""));
+        // Выключенному участку секрет не нужен
+        new IdentityHeadersFilter(false, "");
+    }
+}
@@ -0,0 +1,137 @@
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import shvalieva.cache.CatalogChangePoller;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+
+@SpringBootTest(classes = shvalieva.GatewayServiceApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ContextConfiguration(initializers = GatewayResponseCacheTests.WiremockInitializer.class)
+public class GatewayResponseCacheTests {
+
+    static class WiremockInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        static WireMockServer wireMockServer = new WireMockServer(0);
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            wireMockServer.start();
+            int port = wireMockServer.port();
+            TestPropertyValues.of(
+                    "spring.cloud.gateway.routes[0].id=mock-hotel",
+                    "spring.cloud.gateway.routes[0].uri=http://localhost:" + port,
+                    "spring.cloud.gateway.routes[0].predicates[0]=Path=/hotels/**,/rooms/**",
+                    "gateway.cache.changes.base-url=http://localhost:" + port,
+                    // лента опрашивается вручную
+                    "gateway.cache.changes.poll-interval-ms=3600000"
+            ).applyTo(context.getEnvironment());
+        }
+    }
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private CatalogChangePoller changePoller;
+
+    @BeforeEach
+    void setup() {
+        WiremockInitializer.wireMockServer.resetAll();
+        WiremockInitializer.wireMockServer.stubFor(get(urlPathEqualTo("/hotels/changes"))
+                .willReturn(okJson("{\"epoch\":\"e1\",\"version\":0,\"reset\":true,\"changes\":[]}")));
+        changePoller.poll();
+        WiremockInitializer.wireMockServer.stubFor(get(urlEqualTo("/hotels/1"))
+                .willReturn(okJson("{\"id\":1,\"name\":\"H\"}")));
+    }
+
+    @AfterAll
+    static void shutdown() {
+        WiremockInitializer.wireMockServer.stop();
+    }
+
+    private static String token(String scope) throws Exception {
+        byte[] key = new byte[32];
+        byte[] secret = "dev-secret-please-change".getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(secret, 0, key, 0, secret.length);
+        Instant now = Instant.now();
+        SignedJWT jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256), new JWTClaimsSet.Builder()
+                .subject("1")
+                .claim("scope", scope)
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plusSeconds(3600)))
+                .build());
+        jwt.sign(new MACSigner(key));
+        return jwt.serialize();
+    }
+
+    private WebTestClient.ResponseSpec getHotel(String scope) throws Exception {
+        return webTestClient.get().uri("/hotels/1")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token(scope))
+                .exchange();
+    }
+
+    @Test
+    void repeatedReadServedFromCacheWithEtag() throws Exception {
+        String etag = getHotel("USER").expectStatus().isOk()
+                .expectHeader().valueEquals("X-Cache", "MISS")
+                .returnResult(String.class).getResponseHeaders().getETag();
+        getHotel("USER").expectStatus().isOk()
+                .expectHeader().valueEquals("X-Cache", "HIT")
+                .expectBody().jsonPath("$.name").isEqualTo("H");
+        WiremockInitializer.wireMockServer.verify(1, getRequestedFor(urlEqualTo("/hotels/1")));
+
+        webTestClient.get().uri("/hotels/1")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token("USER"))
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus().isNotModified();
+
+        // другая область доступа — отдельная запись
+        getHotel("ADMIN").expectStatus().isOk().expectHeader().valueEquals("X-Cache", "MISS");
+        WiremockInitializer.wireMockServer.verify(2, getRequestedFor(urlEqualTo("/hotels/1")));
+    }
+
+    @Test
+    void changeFeedInvalidatesHotel() throws Exception {
+        getHotel("USER").expectStatus().isOk();
+        getHotel("USER").expectHeader().valueEquals("X-Cache", "HIT");
+
+        WiremockInitializer.wireMockServer.stubFor(get(urlPathEqualTo("/hotels/changes"))
+                .willReturn(okJson("{\"epoch\":\"e1\",\"version\":1,\"reset\":false,"
+                        + "\"changes\":[{\"version\":1,\"type\":\"HOTEL\",\"hotelId\":1}]}")));
+        changePoller.poll();
+
+        getHotel("USER").expectStatus().isOk().expectHeader().valueEquals("X-Cache", "MISS");
+        WiremockInitializer.wireMockServer.verify(2, getRequestedFor(urlEqualTo("/hotels/1")));
+    }
+
+    @Test
+    void roomChangeThroughGatewayInvalidatesCatalog() throws Exception {
+        WiremockInitializer.wireMockServer.stubFor(post(urlEqualTo("/rooms/1/confirm"))
+                .willReturn(okJson("{}")));
+        getHotel("USER").expectStatus().isOk();
+        getHotel("USER").expectHeader().valueEquals("X-Cache", "HIT");
+
+        webTestClient.post().uri("/rooms/1/confirm")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token("USER"))
+                .exchange()
+                .expectStatus().isOk();
+
+        getHotel("USER").expectStatus().isOk().expectHeader().valueEquals("X-Cache", "MISS");
+        WiremockInitializer.wireMockServer.verify(2, getRequestedFor(urlEqualTo("/hotels/1")));
+    }
+}
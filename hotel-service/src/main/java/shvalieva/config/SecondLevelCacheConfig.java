@@ -0,0 +1,58 @@
+package shvalieva.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.time.Duration;
+import java.util.OptionalLong;
+
+/**
+ * Регионы кэша второго уровня Hibernate. Менеджер JCache (Caffeine) создаётся здесь и передаётся
+ * Hibernate готовым, чтобы у каждого региона были свои ограничения размера и времени жизни.
+ */
+@Configuration
+public class SecondLevelCacheConfig {
+    public static final String HOTEL_REGION = "hotel";
+    public static final String ROOM_REGION = "room";
+    public static final String HOTEL_ROOMS_REGION = "hotel.rooms";
+    public static final String HOTEL_LIST_REGION = "hotel-list";
+    public static final String ROOM_SUMMARIES_REGION = "room-summaries";
+    // Имя региона меток времени таблиц, по которым Hibernate отбрасывает устаревшие результаты запросов
+    private static final String TIMESTAMPS_REGION = "default-update-timestamps-region";
+
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(@Value("${hotel.cache.entity-max-size:10000}") long entityMaxSize,
+                                              @Value("${hotel.cache.query-max-size:1000}") long queryMaxSize,
+                                              @Value("${hotel.cache.ttl-seconds:600}") long ttlSeconds) {
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager();
+        long ttlNanos = Duration.ofSeconds(ttlSeconds).toNanos();
+        cacheManager.createCache(HOTEL_REGION, bounded(entityMaxSize, ttlNanos));
+        cacheManager.createCache(ROOM_REGION, bounded(entityMaxSize, ttlNanos));
+        cacheManager.createCache(HOTEL_ROOMS_REGION, bounded(entityMaxSize, ttlNanos));
+        cacheManager.createCache(HOTEL_LIST_REGION, bounded(queryMaxSize, ttlNanos));
+        cacheManager.createCache(ROOM_SUMMARIES_REGION, bounded(queryMaxSize, ttlNanos));
+        // Метки времени не вытесняются: потеря метки сделала бы устаревший результат запроса снова валидным
+        cacheManager.createCache(TIMESTAMPS_REGION, new CaffeineConfiguration<>());
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheManager(CacheManager hibernateCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+    }
+
+    private static CaffeineConfiguration<Object, Object> bounded(long maxSize, long ttlNanos) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(maxSize));
+        configuration.setExpireAfterWrite(OptionalLong.of(ttlNanos));
+        return configuration;
+    }
+}
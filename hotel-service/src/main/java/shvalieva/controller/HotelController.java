@@ -1,30 +1,65 @@
 package shvalieva.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import shvalieva.dto.CatalogChanges;
+import shvalieva.dto.HotelView;
+import shvalieva.dto.RoomPage;
+import shvalieva.dto.RoomSort;
+import shvalieva.dto.RoomSummary;
 import shvalieva.entity.Hotel;
-import shvalieva.entity.Room;
+import shvalieva.service.CatalogChangeLog;
 import shvalieva.service.HotelService;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
 @RequestMapping("/hotels")
 @io.swagger.v3.oas.annotations.security.SecurityRequirement(name = "bearer-jwt")
 public class HotelController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final HotelService hotelService;
+    private final ObjectMapper objectMapper;
+    private final CatalogChangeLog catalogChangeLog;
 
-    public HotelController(HotelService hotelService) {
+    public HotelController(HotelService hotelService, ObjectMapper objectMapper, CatalogChangeLog catalogChangeLog) {
         this.hotelService = hotelService;
+        this.objectMapper = objectMapper;
+        this.catalogChangeLog = catalogChangeLog;
     }
 
+    // Условные GET: ETag считается по версиям до загрузки данных, при совпадении If-None-Match — 304 без тела
     @GetMapping
-    public List<Hotel> list() { return hotelService.listHotels(); }
+    public ResponseEntity<List<HotelView>> list(WebRequest request) {
+        String etag = hotelService.hotelsEtag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).body(hotelService.listHotelViews());
+    }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Hotel> get(@PathVariable Long id) {
-        return hotelService.getHotel(id).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<HotelView> get(@PathVariable Long id, WebRequest request) {
+        String etag = hotelService.hotelEtag(id).orElse(null);
+        if (etag == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return hotelService.getHotelView(id)
+                .map(h -> ResponseEntity.ok().eTag(etag).body(h))
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @PreAuthorize("hasAuthority('SCOPE_ADMIN')")
@@ -49,6 +84,70 @@ public class HotelController {
         return ResponseEntity.noContent().build();
     }
 
+    // Лента изменений каталога для кэша ответов шлюза
+    @GetMapping("/changes")
+    public CatalogChanges changes(@RequestParam(required = false) String epoch,
+                                  @RequestParam(defaultValue = "0") long after) {
+        return catalogChangeLog.since(epoch, after);
+    }
+
+    // Свободные номера: /hotels/availability?city=...&capacity=2&from=2025-10-20&to=2025-10-22
+    @GetMapping("/availability")
+    public ResponseEntity<List<RoomSummary>> availability(@RequestParam String city,
+                                                          @RequestParam(defaultValue = "1") int capacity,
+                                                          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                          @RequestParam(defaultValue = "100") int size) {
+        try {
+            return ResponseEntity.ok(hotelService.searchAvailable(city, capacity, from, to,
+                    Math.min(Math.max(size, 1), 1000)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Номера keyset-страницами; курсор следующей страницы — в заголовке X-Next-Cursor
     @GetMapping("/rooms")
-    public List<Room> rooms() { return hotelService.listRooms(); }
+    public ResponseEntity<List<RoomSummary>> rooms(@RequestParam(defaultValue = "id") String sort,
+                                                   @RequestParam(defaultValue = "false") boolean desc,
+                                                   @RequestParam(required = false) String after,
+                                                   @RequestParam(defaultValue = "100") int size,
+                                                   WebRequest request) {
+        String etag = hotelService.roomsEtag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        RoomPage page;
+        try {
+            page = hotelService.listRooms(RoomSort.parse(sort), desc, after, Math.min(Math.max(size, 1), 1000));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(etag);
+        if (page.next() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.next());
+        }
+        return response.body(page.items());
+    }
+
+    // Все номера одним ответом в формате NDJSON, без сборки списка в памяти
+    @GetMapping(value = "/rooms/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamRooms(@RequestParam(defaultValue = "id") String sort,
+                                                             @RequestParam(defaultValue = "false") boolean desc) {
+        RoomSort roomSort;
+        try {
+            roomSort = RoomSort.parse(sort);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = out -> hotelService.streamRooms(roomSort, desc, room -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(room));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
 }
\ No newline at end of file
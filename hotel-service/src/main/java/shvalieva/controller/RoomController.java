@@ -3,11 +3,16 @@ package shvalieva.controller;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import shvalieva.dto.BatchHoldItem;
+import shvalieva.dto.BatchResult;
+import shvalieva.dto.RoomView;
 import shvalieva.entity.Room;
 import shvalieva.entity.RoomReservationLock;
 import shvalieva.service.HotelService;
 
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -21,8 +26,18 @@ public class RoomController {
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Room> get(@PathVariable Long id) {
-        return hotelService.getRoom(id).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<RoomView> get(@PathVariable Long id, WebRequest request) {
+        String etag = hotelService.roomEtag(id).orElse(null);
+        if (etag == null) {
+            return ResponseEntity.notFound().build();
+        }
+        // Совпал If-None-Match: ответ 304 уже сформирован, номер не загружается
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return hotelService.getRoomView(id)
+                .map(r -> ResponseEntity.ok().eTag(etag).body(r))
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @PreAuthorize("hasAuthority('SCOPE_ADMIN')")
@@ -80,4 +95,24 @@ public class RoomController {
             return ResponseEntity.notFound().build();
         }
     }
+
+    // Пакетные операции для групповых бронирований: всё или ничего, 409 с разбором по элементам
+    @PostMapping("/batch/hold")
+    public ResponseEntity<BatchResult> holdBatch(@RequestBody List<BatchHoldItem> items) {
+        return batchResponse(hotelService.holdRooms(items));
+    }
+
+    @PostMapping("/batch/confirm")
+    public ResponseEntity<BatchResult> confirmBatch(@RequestBody List<String> requestIds) {
+        return batchResponse(hotelService.confirmHolds(requestIds));
+    }
+
+    @PostMapping("/batch/release")
+    public ResponseEntity<BatchResult> releaseBatch(@RequestBody List<String> requestIds) {
+        return batchResponse(hotelService.releaseHolds(requestIds));
+    }
+
+    private static ResponseEntity<BatchResult> batchResponse(BatchResult result) {
+        return result.applied() ? ResponseEntity.ok(result) : ResponseEntity.status(409).body(result);
+    }
 }
\ No newline at end of file
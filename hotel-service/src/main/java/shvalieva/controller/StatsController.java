@@ -2,26 +2,25 @@ package shvalieva.controller;
 
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import shvalieva.entity.Room;
-import shvalieva.repository.RoomRepository;
+import shvalieva.dto.PopularRoom;
+import shvalieva.service.HotelService;
 
-import java.util.Comparator;
 import java.util.List;
 
 @RestController
 @RequestMapping("/stats")
 public class StatsController {
-    private final RoomRepository roomRepository;
+    private final HotelService hotelService;
 
-    public StatsController(RoomRepository roomRepository) {
-        this.roomRepository = roomRepository;
+    public StatsController(HotelService hotelService) {
+        this.hotelService = hotelService;
     }
 
     @GetMapping("/rooms/popular")
-    public List<Room> popularRooms() {
-        return roomRepository.findAll().stream()
-                .sorted(Comparator.comparingLong(Room::getTimesBooked).reversed())
-                .toList();
+    public List<PopularRoom> popularRooms(@RequestParam(defaultValue = "0") int page,
+                                          @RequestParam(defaultValue = "100") int size) {
+        return hotelService.popularRooms(Math.max(page, 0), Math.min(Math.max(size, 1), 1000));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,10 @@
+package shvalieva.dto;
+
+import java.time.LocalDate;
+
+public record BatchHoldItem(
+        Long roomId,
+        String requestId,
+        LocalDate startDate,
+        LocalDate endDate
+) {}
@@ -0,0 +1,20 @@
+package shvalieva.dto;
+
+import shvalieva.entity.RoomReservationLock;
+
+// error != null — элемент не прошёл проверку; status — итоговый (или ожидаемый при откате пакета) статус
+public record BatchItemResult(
+        String requestId,
+        Long roomId,
+        Long lockId,
+        RoomReservationLock.Status status,
+        String error
+) {
+    public static BatchItemResult ok(RoomReservationLock lock) {
+        return new BatchItemResult(lock.getRequestId(), lock.getRoomId(), lock.getId(), lock.getStatus(), null);
+    }
+
+    public static BatchItemResult failed(String requestId, Long roomId, String error) {
+        return new BatchItemResult(requestId, roomId, null, null, error);
+    }
+}
@@ -0,0 +1,9 @@
+package shvalieva.dto;
+
+import java.util.List;
+
+// Пакет применяется целиком (applied = true) или не применяется вовсе
+public record BatchResult(
+        boolean applied,
+        List<BatchItemResult> items
+) {}
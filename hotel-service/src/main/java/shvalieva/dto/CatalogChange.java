@@ -0,0 +1,8 @@
+package shvalieva.dto;
+
+public record CatalogChange(
+        long version,
+        String type,
+        Long hotelId,
+        Long roomId
+) {}
@@ -0,0 +1,14 @@
+package shvalieva.dto;
+
+import java.util.List;
+
+/**
+ * Лента изменений каталога после версии after. reset == true — непрерывной истории нет
+ * (рестарт сервиса или слишком старая версия), подписчик должен сбросить всё, что закэшировал.
+ */
+public record CatalogChanges(
+        String epoch,
+        long version,
+        boolean reset,
+        List<CatalogChange> changes
+) {}
@@ -0,0 +1,19 @@
+package shvalieva.dto;
+
+import shvalieva.entity.Hotel;
+
+import java.util.List;
+
+// Отель с номерами для ответов API: плоская структура без циклических ссылок
+public record HotelView(
+        Long id,
+        String name,
+        String city,
+        String address,
+        List<RoomView> rooms
+) {
+    public static HotelView of(Hotel hotel) {
+        return new HotelView(hotel.getId(), hotel.getName(), hotel.getCity(), hotel.getAddress(),
+                hotel.getRooms().stream().map(RoomView::of).toList());
+    }
+}
@@ -0,0 +1,23 @@
+package shvalieva.dto;
+
+import shvalieva.entity.RoomReservationLock;
+
+import java.time.LocalDate;
+
+// Содержимое события outbox о смене статуса удержания; статус передаётся явно,
+// так как пакетные операции меняют его запросом UPDATE, не трогая загруженные сущности
+public record LockEvent(
+        Long id,
+        String requestId,
+        Long roomId,
+        LocalDate startDate,
+        LocalDate endDate,
+        RoomReservationLock.Status status
+) {
+    public static final String AGGREGATE = "RoomReservationLock";
+
+    public static LockEvent of(RoomReservationLock lock, RoomReservationLock.Status status) {
+        return new LockEvent(lock.getId(), lock.getRequestId(), lock.getRoomId(),
+                lock.getStartDate(), lock.getEndDate(), status);
+    }
+}
@@ -0,0 +1,13 @@
+package shvalieva.dto;
+
+public record PopularRoom(
+        Long id,
+        String number,
+        int capacity,
+        long timesBooked,
+        Long hotelId
+) {
+    public PopularRoom withTimesBooked(long timesBooked) {
+        return new PopularRoom(id, number, capacity, timesBooked, hotelId);
+    }
+}
@@ -0,0 +1,14 @@
+package shvalieva.dto;
+
+public enum RoomSort {
+    ID,
+    TIMES_BOOKED;
+
+    public static RoomSort parse(String value) {
+        return switch (value) {
+            case "id" -> ID;
+            case "timesBooked" -> TIMES_BOOKED;
+            default -> throw new IllegalArgumentException("Неизвестная сортировка: " + value);
+        };
+    }
+}
@@ -0,0 +1,10 @@
+package shvalieva.dto;
+
+// Облегчённое представление номера для списков: без связей и служебных полей
+public record RoomSummary(
+        Long id,
+        String number,
+        int capacity,
+        long timesBooked,
+        Long hotelId
+) {}
@@ -0,0 +1,20 @@
+package shvalieva.dto;
+
+import shvalieva.entity.Room;
+
+// Номер для ответов API: вместо ленивой ссылки на отель — только его id
+public record RoomView(
+        Long id,
+        String number,
+        int capacity,
+        long timesBooked,
+        boolean available,
+        Long hotelId
+) {
+    public static RoomView of(Room room) {
+        // getId() у прокси Hibernate не инициализирует его, запроса к отелю нет
+        Long hotelId = room.getHotel() == null ? null : room.getHotel().getId();
+        return new RoomView(room.getId(), room.getNumber(), room.getCapacity(), room.getTimesBooked(),
+                room.isAvailable(), hotelId);
+    }
+}
@@ -0,0 +1,12 @@
+package shvalieva.dto;
+
+/**
+ * Дешёвый отпечаток состояния для ETag: для набора строк — число строк и суммы id, @Version и timesBooked.
+ * Вставка, удаление и любое изменение строки меняют хотя бы одну из сумм.
+ */
+public record VersionStamp(
+        long count,
+        long idSum,
+        long versionSum,
+        long timesBookedSum
+) {}
@@ -0,0 +1,68 @@
+package shvalieva.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Архив удержаний: снятые и прошедшие по датам строки переносятся сюда из room_reservation_lock,
+ * чтобы рабочая таблица содержала только актуальный инвентарь. id сохраняется исходный.
+ */
+@Entity
+@Immutable
+@Table(name = "room_reservation_lock_archive",
+        uniqueConstraints = @UniqueConstraint(name = "uk_lock_archive_request", columnNames = {"requestId"}),
+        indexes = @Index(name = "idx_lock_archive_room_status", columnList = "roomId, status"))
+public class ArchivedReservationLock {
+    @Id
+    private Long id;
+
+    private String requestId;
+
+    private Long roomId;
+
+    private LocalDate startDate;
+
+    private LocalDate endDate;
+
+    @Enumerated(EnumType.STRING)
+    private RoomReservationLock.Status status;
+
+    private Instant expiresAt;
+
+    private Instant archivedAt;
+
+    // Для идемпотентных повторов по requestId архивная запись отдаётся как обычное удержание.
+    // Неподтверждённое удержание попадает в архив только после своих дат и считается снятым.
+    // Результат — представление только для чтения: смена его статуса отклоняется
+    public RoomReservationLock toLock() {
+        RoomReservationLock lock = new RoomReservationLock();
+        lock.setId(id);
+        lock.setRequestId(requestId);
+        lock.setRoomId(roomId);
+        lock.setStartDate(startDate);
+        lock.setEndDate(endDate);
+        lock.setStatus(status == RoomReservationLock.Status.HELD ? RoomReservationLock.Status.RELEASED : status);
+        lock.setExpiresAt(expiresAt);
+        lock.markArchived();
+        return lock;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getRequestId() { return requestId; }
+    public void setRequestId(String requestId) { this.requestId = requestId; }
+    public Long getRoomId() { return roomId; }
+    public void setRoomId(Long roomId) { this.roomId = roomId; }
+    public LocalDate getStartDate() { return startDate; }
+    public void setStartDate(LocalDate startDate) { this.startDate = startDate; }
+    public LocalDate getEndDate() { return endDate; }
+    public void setEndDate(LocalDate endDate) { this.endDate = endDate; }
+    public RoomReservationLock.Status getStatus() { return status; }
+    public void setStatus(RoomReservationLock.Status status) { this.status = status; }
+    public Instant getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(Instant expiresAt) { this.expiresAt = expiresAt; }
+    public Instant getArchivedAt() { return archivedAt; }
+    public void setArchivedAt(Instant archivedAt) { this.archivedAt = archivedAt; }
+}
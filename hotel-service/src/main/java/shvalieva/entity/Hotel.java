@@ -1,10 +1,16 @@
 package shvalieva.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@Table(indexes = @Index(name = "idx_hotel_city", columnList = "city"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "hotel")
 public class Hotel {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -16,7 +22,12 @@ public class Hotel {
 
     private String address;
 
+    @Version
+    @ColumnDefault("0")
+    private long version;
+
     @OneToMany(mappedBy = "hotel", cascade = CascadeType.ALL, orphanRemoval = true)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "hotel.rooms")
     private List<Room> rooms = new ArrayList<>();
 
     public Long getId() { return id; }
@@ -27,6 +38,8 @@ public class Hotel {
     public void setCity(String city) { this.city = city; }
     public String getAddress() { return address; }
     public void setAddress(String address) { this.address = address; }
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
     public List<Room> getRooms() { return rooms; }
     public void setRooms(List<Room> rooms) { this.rooms = rooms; }
 }
\ No newline at end of file
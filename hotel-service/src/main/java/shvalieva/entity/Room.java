@@ -1,8 +1,15 @@
 package shvalieva.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
 
 @Entity
+// Индекс под keyset-пагинацию и сортировку по популярности
+@Table(indexes = @Index(name = "idx_room_times_booked", columnList = "timesBooked, id"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "room")
 public class Room {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -12,10 +19,17 @@ public class Room {
 
     private int capacity;
 
+    // Пишется только счётчиками бронирований (UPDATE в обход JPA); сохранение номера его не перезаписывает
+    @Column(updatable = false)
     private long timesBooked;
 
     private boolean available = true;
 
+    // Версия для оптимистичной блокировки и ETag; timesBooked пишется в обход JPA и в версии не учитывается
+    @Version
+    @ColumnDefault("0")
+    private long version;
+
     @ManyToOne(fetch = FetchType.LAZY)
     private Hotel hotel;
 
@@ -29,6 +43,8 @@ public class Room {
     public void setTimesBooked(long timesBooked) { this.timesBooked = timesBooked; }
     public boolean isAvailable() { return available; }
     public void setAvailable(boolean available) { this.available = available; }
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
     public Hotel getHotel() { return hotel; }
     public void setHotel(Hotel hotel) { this.hotel = hotel; }
 }
\ No newline at end of file
@@ -1,11 +1,18 @@
 package shvalieva.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import java.time.Instant;
 import java.time.LocalDate;
 
 @Entity
 @Table(uniqueConstraints = {
         @UniqueConstraint(name = "uk_lock_request", columnNames = {"requestId"})
+}, indexes = {
+        // Под проверку пересечений: номер, статус и диапазон дат
+        @Index(name = "idx_lock_room_status_dates", columnList = "roomId, status, startDate, endDate"),
+        // Под сброс счётчиков: подтверждения, ещё не перенесённые в room.times_booked
+        @Index(name = "idx_lock_counted_status", columnList = "counted, status")
 })
 public class RoomReservationLock {
     @Id
@@ -23,6 +30,22 @@ public class RoomReservationLock {
     @Enumerated(EnumType.STRING)
     private Status status;
 
+    // Срок удержания HELD: после него удержание не блокирует даты и снимается фоновой задачей
+    private Instant expiresAt;
+
+    // Подтверждение уже учтено в room.times_booked. Ставится только сбросом счётчиков (JDBC) в той же
+    // транзакции, что и UPDATE room, поэтому JPA колонку не перезаписывает
+    @Column(nullable = false, updatable = false)
+    private boolean counted;
+
+    // Запись по устаревшему состоянию (например, подтверждение уже снятого удержания) отклоняется
+    @Version
+    private Long version;
+
+    // Представление архивной записи (ArchivedReservationLock.toLock): только для чтения, не сохраняется
+    @Transient
+    private boolean archived;
+
     public enum Status { HELD, RELEASED, CONFIRMED }
 
     public Long getId() { return id; }
@@ -37,4 +60,12 @@ public class RoomReservationLock {
     public void setEndDate(LocalDate endDate) { this.endDate = endDate; }
     public Status getStatus() { return status; }
     public void setStatus(Status status) { this.status = status; }
+    public Instant getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(Instant expiresAt) { this.expiresAt = expiresAt; }
+    public boolean isCounted() { return counted; }
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+    @JsonIgnore
+    public boolean isArchived() { return archived; }
+    void markArchived() { this.archived = true; }
 }
\ No newline at end of file
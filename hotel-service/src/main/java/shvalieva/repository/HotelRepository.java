@@ -1,7 +1,37 @@
 package shvalieva.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import shvalieva.dto.VersionStamp;
 import shvalieva.entity.Hotel;
 
+import java.util.List;
+import java.util.Optional;
+
 public interface HotelRepository extends JpaRepository<Hotel, Long> {
+    // Отели вместе с номерами одним запросом (join fetch по графу), без догрузки rooms по каждому отелю.
+    // Результат — в кэше запросов, сами отели и номера — в кэше сущностей
+    @EntityGraph(attributePaths = "rooms")
+    @Query("select h from Hotel h order by h.id")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "hotel-list")
+    })
+    List<Hotel> findAllWithRooms();
+
+    @EntityGraph(attributePaths = "rooms")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    Optional<Hotel> findWithRoomsById(Long id);
+
+    @Query("select new shvalieva.dto.VersionStamp(count(h), coalesce(sum(h.id), 0L), coalesce(sum(h.version), 0L), 0L) from Hotel h")
+    VersionStamp stampAll();
+
+    @Query("select h.version from Hotel h where h.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
 }
\ No newline at end of file
@@ -1,7 +1,50 @@
 package shvalieva.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import shvalieva.dto.PopularRoom;
+import shvalieva.dto.RoomSummary;
+import shvalieva.dto.VersionStamp;
 import shvalieva.entity.Room;
 
-public interface RoomRepository extends JpaRepository<Room, Long> {
+import java.util.List;
+import java.util.Optional;
+
+public interface RoomRepository extends JpaRepository<Room, Long>, RoomRepositoryCustom {
+    @Query("select new shvalieva.dto.PopularRoom(r.id, r.number, r.capacity, r.timesBooked, r.hotel.id) from Room r")
+    List<PopularRoom> findAllPopularity();
+
+    // Кандидаты для поиска свободных номеров; занятость по датам проверяется отдельно
+    @Query("select new shvalieva.dto.RoomSummary(r.id, r.number, r.capacity, r.timesBooked, r.hotel.id) from Room r"
+            + " where r.hotel.city = :city and r.capacity >= :capacity and r.available = true order by r.id")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "room-summaries")
+    })
+    List<RoomSummary> findSearchCandidates(@Param("city") String city, @Param("capacity") int capacity);
+
+    // Отпечатки для ETag: без загрузки сущностей
+    @Query("select new shvalieva.dto.VersionStamp(1L, r.id, r.version, r.timesBooked) from Room r where r.id = :id")
+    Optional<VersionStamp> stampById(@Param("id") Long id);
+
+    @Query("select new shvalieva.dto.VersionStamp(count(r), coalesce(sum(r.id), 0L), coalesce(sum(r.version), 0L),"
+            + " coalesce(sum(r.timesBooked), 0L)) from Room r where r.hotel.id = :hotelId")
+    VersionStamp stampByHotel(@Param("hotelId") Long hotelId);
+
+    @Query("select new shvalieva.dto.VersionStamp(count(r), coalesce(sum(r.id), 0L), coalesce(sum(r.version), 0L),"
+            + " coalesce(sum(r.timesBooked), 0L)) from Room r")
+    VersionStamp stampAll();
+
+    @Query("select r.version from Room r where r.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @Query("select r.timesBooked from Room r where r.id = :id")
+    Optional<Long> findTimesBookedById(@Param("id") Long id);
+
+    @Query("select h.version from Room r join r.hotel h where r.id = :id")
+    Optional<Long> findHotelVersionByRoomId(@Param("id") Long id);
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package shvalieva.repository;
+
+import shvalieva.dto.RoomSort;
+import shvalieva.dto.RoomSummary;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public interface RoomRepositoryCustom {
+    // Прибавляет накопленные приращения timesBooked одним JDBC batch (roomId -> delta)
+    void addTimesBooked(Map<Long, Long> deltas);
+
+    // Пересчитывает timesBooked всех номеров по учтённым (counted) подтверждённым удержаниям
+    int recountTimesBooked();
+
+    // Keyset-страница: строки строго после (afterTimesBooked, afterId) в заданном порядке; afterId == null — с начала
+    List<RoomSummary> findSummaries(RoomSort sort, boolean descending, Long afterTimesBooked, Long afterId, int limit);
+
+    // Все номера потоком с курсором БД; вызывать внутри транзакции и закрывать Stream
+    Stream<RoomSummary> streamSummaries(RoomSort sort, boolean descending);
+}
@@ -0,0 +1,101 @@
+package shvalieva.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import shvalieva.config.SecondLevelCacheConfig;
+import shvalieva.dto.RoomSort;
+import shvalieva.dto.RoomSummary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class RoomRepositoryImpl implements RoomRepositoryCustom {
+    private static final String ADD_SQL =
+            "update room set times_booked = times_booked + ? where id = ?";
+    // Учтённые подтверждения в рабочей таблице и в архиве (туда попадают только учтённые);
+    // неучтённые добавит ближайший сброс счётчиков любого экземпляра
+    private static final String RECOUNT_SQL =
+            "update room r set times_booked = (select count(*) from room_reservation_lock l"
+                    + " where l.room_id = r.id and l.status = 'CONFIRMED' and l.counted)"
+                    + " + (select count(*) from room_reservation_lock_archive a"
+                    + " where a.room_id = r.id and a.status = 'CONFIRMED')";
+    private static final String SUMMARY_SELECT =
+            "select new shvalieva.dto.RoomSummary(r.id, r.number, r.capacity, r.timesBooked, r.hotel.id) from Room r";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int streamFetchSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public RoomRepositoryImpl(JdbcTemplate jdbcTemplate,
+                              @Value("${hotel.rooms.stream-fetch-size:500}") int streamFetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.streamFetchSize = streamFetchSize;
+    }
+
+    @Override
+    public void addTimesBooked(Map<Long, Long> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(ADD_SQL, new ArrayList<>(deltas.entrySet()), deltas.size(), (ps, e) -> {
+            ps.setLong(1, e.getValue());
+            ps.setLong(2, e.getKey());
+        });
+    }
+
+    @Override
+    public int recountTimesBooked() {
+        return jdbcTemplate.update(RECOUNT_SQL);
+    }
+
+    @Override
+    public List<RoomSummary> findSummaries(RoomSort sort, boolean descending,
+                                           Long afterTimesBooked, Long afterId, int limit) {
+        String op = descending ? "<" : ">";
+        String where = "";
+        if (afterId != null) {
+            // При равном timesBooked порядок задаёт id по возрастанию, поэтому сравнение id всегда ">"
+            where = sort == RoomSort.ID
+                    ? " where r.id " + op + " :afterId"
+                    : " where r.timesBooked " + op + " :afterTimesBooked"
+                    + " or (r.timesBooked = :afterTimesBooked and r.id > :afterId)";
+        }
+        TypedQuery<RoomSummary> query = entityManager
+                .createQuery(SUMMARY_SELECT + where + orderBy(sort, descending), RoomSummary.class)
+                .setMaxResults(limit)
+                // Страницы кэшируются; регион сбрасывается при записи счётчиков и изменениях каталога
+                .setHint(HibernateHints.HINT_CACHEABLE, true)
+                .setHint(HibernateHints.HINT_CACHE_REGION, SecondLevelCacheConfig.ROOM_SUMMARIES_REGION);
+        if (afterId != null) {
+            query.setParameter("afterId", afterId);
+            if (sort == RoomSort.TIMES_BOOKED) {
+                query.setParameter("afterTimesBooked", afterTimesBooked);
+            }
+        }
+        return query.getResultList();
+    }
+
+    @Override
+    public Stream<RoomSummary> streamSummaries(RoomSort sort, boolean descending) {
+        return entityManager
+                .createQuery(SUMMARY_SELECT + orderBy(sort, descending), RoomSummary.class)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, streamFetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream();
+    }
+
+    private static String orderBy(RoomSort sort, boolean descending) {
+        String direction = descending ? " desc" : " asc";
+        return sort == RoomSort.ID
+                ? " order by r.id" + direction
+                : " order by r.timesBooked" + direction + ", r.id asc";
+    }
+}
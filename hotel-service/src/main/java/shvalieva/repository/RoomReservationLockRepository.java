@@ -1,18 +1,55 @@
 package shvalieva.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import shvalieva.entity.RoomReservationLock;
 
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
-public interface RoomReservationLockRepository extends JpaRepository<RoomReservationLock, Long> {
+public interface RoomReservationLockRepository extends JpaRepository<RoomReservationLock, Long>,
+        RoomReservationLockRepositoryCustom {
     Optional<RoomReservationLock> findByRequestId(String requestId);
-    List<RoomReservationLock> findByRoomIdAndStatusInAndStartDateLessThanEqualAndEndDateGreaterThanEqual(
-            Long roomId,
-            List<RoomReservationLock.Status> statuses,
-            LocalDate endInclusive,
-            LocalDate startInclusive
-    );
+    List<RoomReservationLock> findByRequestIdIn(Collection<String> requestIds);
+    List<RoomReservationLock> findByStatusIn(List<RoomReservationLock.Status> statuses);
+
+    // Действующие удержания и подтверждения, пересекающиеся с [startDate, endDate]; истёкшие HELD не учитываются
+    @Query("select l from RoomReservationLock l where l.roomId = :roomId"
+            + " and l.startDate <= :endDate and l.endDate >= :startDate"
+            + " and (l.status = shvalieva.entity.RoomReservationLock.Status.CONFIRMED"
+            + " or (l.status = shvalieva.entity.RoomReservationLock.Status.HELD"
+            + " and (l.expiresAt is null or l.expiresAt > :now)))")
+    List<RoomReservationLock> findActiveOverlapping(@Param("roomId") Long roomId,
+                                                    @Param("startDate") LocalDate startDate,
+                                                    @Param("endDate") LocalDate endDate,
+                                                    @Param("now") Instant now);
+
+    @Query("select distinct l.roomId from RoomReservationLock l where l.id in :ids")
+    List<Long> findRoomIds(@Param("ids") Collection<Long> ids);
+
+    // Номер удержания без загрузки строки: сначала берётся блокировка номера, затем читается статус
+    @Query("select l.roomId from RoomReservationLock l where l.requestId = :requestId")
+    Optional<Long> findRoomIdByRequestId(@Param("requestId") String requestId);
+
+    @Query("select distinct l.roomId from RoomReservationLock l where l.requestId in :requestIds")
+    List<Long> findRoomIdsByRequestIdIn(@Param("requestIds") Collection<String> requestIds);
+
+    @Query("select l from RoomReservationLock l where l.id in :ids"
+            + " and l.status = shvalieva.entity.RoomReservationLock.Status.HELD and l.expiresAt <= :now")
+    List<RoomReservationLock> findExpiredHeld(@Param("ids") Collection<Long> ids, @Param("now") Instant now);
+
+    // Удержания, созданные до появления срока, получают его при старте
+    @Modifying
+    @Query("update RoomReservationLock l set l.expiresAt = :expiresAt"
+            + " where l.status = shvalieva.entity.RoomReservationLock.Status.HELD and l.expiresAt is null")
+    int assignMissingExpiry(@Param("expiresAt") Instant expiresAt);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update RoomReservationLock l set l.status = :status, l.version = l.version + 1 where l.id in :ids")
+    int updateStatus(@Param("ids") Collection<Long> ids, @Param("status") RoomReservationLock.Status status);
 }
\ No newline at end of file
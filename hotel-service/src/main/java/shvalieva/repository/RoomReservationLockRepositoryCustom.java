@@ -0,0 +1,31 @@
+package shvalieva.repository;
+
+import shvalieva.entity.RoomReservationLock;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public interface RoomReservationLockRepositoryCustom {
+    // Пакетная вставка одним JDBC batch; идентификаторы не возвращаются
+    void batchInsert(List<RoomReservationLock> locks);
+
+    // Отмечает неучтённые подтверждения учтёнными; результат — сколько отмечено по каждому номеру
+    Map<Long, Long> markConfirmedCounted();
+
+    // Кандидаты в архив: снятые и закончившиеся раньше today, по возрастанию id
+    List<RoomReservationLock> findArchivable(LocalDate today, int limit);
+
+    // То же среди заданных id; перечитывается под блокировками номеров перед переносом
+    List<RoomReservationLock> findArchivableIn(Collection<Long> ids, LocalDate today);
+
+    // Копирует строки в архив и удаляет из рабочей таблицы
+    int moveToArchive(Collection<Long> ids);
+
+    // Поиск по requestId в архиве: результат — отсоединённое удержание только для чтения
+    Optional<RoomReservationLock> findArchivedByRequestId(String requestId);
+
+    List<RoomReservationLock> findArchivedByRequestIdIn(Collection<String> requestIds);
+}
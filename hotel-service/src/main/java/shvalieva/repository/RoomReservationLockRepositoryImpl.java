@@ -0,0 +1,162 @@
+package shvalieva.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import shvalieva.entity.ArchivedReservationLock;
+import shvalieva.entity.RoomReservationLock;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class RoomReservationLockRepositoryImpl implements RoomReservationLockRepositoryCustom {
+    private static final String INSERT_SQL =
+            "insert into room_reservation_lock"
+                    + " (request_id, room_id, start_date, end_date, status, expires_at, counted, version)"
+                    + " values (?, ?, ?, ?, ?, ?, false, 0)";
+    private static final String LOCK_COLUMNS = "id, request_id, room_id, start_date, end_date, status, expires_at";
+    // Подтверждение уходит в архив только после учёта в room.times_booked: сброс счётчиков читает рабочую таблицу
+    private static final String ARCHIVABLE =
+            "(status = 'RELEASED' or (end_date < :today and (status <> 'CONFIRMED' or counted)))";
+    private static final String FIND_ARCHIVABLE_SQL =
+            "select " + LOCK_COLUMNS + " from room_reservation_lock where " + ARCHIVABLE + " order by id limit :limit";
+    private static final String FIND_ARCHIVABLE_IN_SQL =
+            "select " + LOCK_COLUMNS + " from room_reservation_lock where id in (:ids) and " + ARCHIVABLE;
+    private static final String COPY_TO_ARCHIVE_SQL =
+            "insert into room_reservation_lock_archive (" + LOCK_COLUMNS + ", archived_at)"
+                    + " select " + LOCK_COLUMNS + ", :archivedAt from room_reservation_lock where id in (:ids)";
+    private static final String DELETE_SQL = "delete from room_reservation_lock where id in (:ids)";
+    private static final String FIND_UNCOUNTED_SQL =
+            "select id, room_id from room_reservation_lock where counted = false and status = 'CONFIRMED'";
+    private static final String MARK_COUNTED_SQL =
+            "update room_reservation_lock set counted = true where id = ? and counted = false";
+
+    private static final RowMapper<RoomReservationLock> LOCK_ROW = (rs, rowNum) -> {
+        RoomReservationLock lock = new RoomReservationLock();
+        lock.setId(rs.getLong("id"));
+        lock.setRequestId(rs.getString("request_id"));
+        lock.setRoomId(rs.getLong("room_id"));
+        lock.setStartDate(rs.getObject("start_date", LocalDate.class));
+        lock.setEndDate(rs.getObject("end_date", LocalDate.class));
+        lock.setStatus(RoomReservationLock.Status.valueOf(rs.getString("status")));
+        OffsetDateTime expiresAt = rs.getObject("expires_at", OffsetDateTime.class);
+        lock.setExpiresAt(expiresAt == null ? null : expiresAt.toInstant());
+        return lock;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public RoomReservationLockRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    @Override
+    public void batchInsert(List<RoomReservationLock> locks) {
+        if (locks.isEmpty()) {
+            return;
+        }
+        // Отложенные изменения JPA должны попасть в БД раньше пакета
+        entityManager.flush();
+        jdbcTemplate.batchUpdate(INSERT_SQL, locks, locks.size(), (ps, lock) -> {
+            ps.setString(1, lock.getRequestId());
+            ps.setLong(2, lock.getRoomId());
+            ps.setDate(3, Date.valueOf(lock.getStartDate()));
+            ps.setDate(4, Date.valueOf(lock.getEndDate()));
+            ps.setString(5, lock.getStatus().name());
+            ps.setObject(6, lock.getExpiresAt() == null ? null
+                    : OffsetDateTime.ofInstant(lock.getExpiresAt(), ZoneOffset.UTC));
+        });
+    }
+
+    @Override
+    public Map<Long, Long> markConfirmedCounted() {
+        List<long[]> uncounted = jdbcTemplate.query(FIND_UNCOUNTED_SQL,
+                (rs, rowNum) -> new long[]{rs.getLong("id"), rs.getLong("room_id")});
+        Map<Long, Long> deltas = new HashMap<>();
+        if (uncounted.isEmpty()) {
+            return deltas;
+        }
+        int[][] marked = jdbcTemplate.batchUpdate(MARK_COUNTED_SQL, uncounted, uncounted.size(),
+                (ps, row) -> ps.setLong(1, row[0]));
+        // Строку, которую успел отметить параллельный сброс (другой экземпляр), учитывает он
+        for (int i = 0; i < uncounted.size(); i++) {
+            if (marked[0][i] > 0) {
+                deltas.merge(uncounted.get(i)[1], 1L, Long::sum);
+            }
+        }
+        return deltas;
+    }
+
+    @Override
+    public List<RoomReservationLock> findArchivable(LocalDate today, int limit) {
+        return namedJdbcTemplate.query(FIND_ARCHIVABLE_SQL, new MapSqlParameterSource()
+                .addValue("today", Date.valueOf(today))
+                .addValue("limit", limit), LOCK_ROW);
+    }
+
+    @Override
+    public List<RoomReservationLock> findArchivableIn(Collection<Long> ids, LocalDate today) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return namedJdbcTemplate.query(FIND_ARCHIVABLE_IN_SQL, new MapSqlParameterSource()
+                .addValue("ids", ids)
+                .addValue("today", Date.valueOf(today)), LOCK_ROW);
+    }
+
+    @Override
+    public int moveToArchive(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        // Изменения удержаний в текущей сессии JPA должны попасть в БД до копирования
+        entityManager.flush();
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("ids", ids)
+                .addValue("archivedAt", Timestamp.from(Instant.now()));
+        namedJdbcTemplate.update(COPY_TO_ARCHIVE_SQL, params);
+        return namedJdbcTemplate.update(DELETE_SQL, params);
+    }
+
+    @Override
+    public Optional<RoomReservationLock> findArchivedByRequestId(String requestId) {
+        return entityManager.createQuery(
+                        "select a from ArchivedReservationLock a where a.requestId = :requestId",
+                        ArchivedReservationLock.class)
+                .setParameter("requestId", requestId)
+                .getResultStream()
+                .findFirst()
+                .map(ArchivedReservationLock::toLock);
+    }
+
+    @Override
+    public List<RoomReservationLock> findArchivedByRequestIdIn(Collection<String> requestIds) {
+        if (requestIds.isEmpty()) {
+            return List.of();
+        }
+        return entityManager.createQuery(
+                        "select a from ArchivedReservationLock a where a.requestId in :requestIds",
+                        ArchivedReservationLock.class)
+                .setParameter("requestIds", requestIds)
+                .getResultStream()
+                .map(ArchivedReservationLock::toLock)
+                .toList();
+    }
+}
@@ -0,0 +1,61 @@
+package shvalieva.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import shvalieva.entity.Hotel;
+import shvalieva.entity.Room;
+
+import java.util.Collection;
+
+import static shvalieva.config.SecondLevelCacheConfig.HOTEL_LIST_REGION;
+import static shvalieva.config.SecondLevelCacheConfig.ROOM_SUMMARIES_REGION;
+
+/**
+ * Явная очистка кэша второго уровня. Изменения через сессию Hibernate кэш обновляет сам,
+ * но коллекция Hotel.rooms не сбрасывается при удалении или переносе номера,
+ * а пакетные UPDATE счётчиков через JDBC Hibernate не видит вовсе.
+ */
+@Component
+public class CatalogCacheEvictor {
+    private static final String HOTEL_ROOMS_ROLE = Hotel.class.getName() + ".rooms";
+
+    private final Cache cache;
+
+    public CatalogCacheEvictor(EntityManagerFactory entityManagerFactory) {
+        this.cache = entityManagerFactory.getCache().unwrap(Cache.class);
+    }
+
+    // Изменения каталога администратором: после коммита, чтобы параллельное чтение не вернуло старое в кэш
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        if (event.type() == CatalogChangedEvent.Type.HOTEL) {
+            if (event.hotelId() != null) {
+                cache.evictEntityData(Hotel.class, event.hotelId());
+                cache.evictCollectionData(HOTEL_ROOMS_ROLE, event.hotelId());
+            }
+            // Номера отеля могли быть изменены или удалены каскадом
+            cache.evictEntityData(Room.class);
+            cache.evictQueryRegion(HOTEL_LIST_REGION);
+        } else {
+            if (event.roomId() != null) {
+                cache.evictEntityData(Room.class, event.roomId());
+            }
+            // Номер мог перейти из другого отеля, чей список номеров тоже устарел
+            cache.evictCollectionData(HOTEL_ROOMS_ROLE);
+        }
+        cache.evictQueryRegion(ROOM_SUMMARIES_REGION);
+    }
+
+    // timesBooked записан в обход Hibernate
+    public void evictRooms(Collection<Long> roomIds) {
+        roomIds.forEach(id -> cache.evictEntityData(Room.class, id));
+        cache.evictQueryRegion(ROOM_SUMMARIES_REGION);
+    }
+
+    public void evictAllRooms() {
+        cache.evictEntityData(Room.class);
+        cache.evictQueryRegion(ROOM_SUMMARIES_REGION);
+    }
+}
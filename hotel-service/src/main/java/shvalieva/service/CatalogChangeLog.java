@@ -0,0 +1,49 @@
+package shvalieva.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import shvalieva.dto.CatalogChange;
+import shvalieva.dto.CatalogChanges;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Ограниченный журнал последних изменений каталога для внешних кэшей (кэш ответов шлюза).
+ * Версии монотонны в пределах epoch — идентификатора запуска; после рестарта подписчики получают reset.
+ */
+@Component
+public class CatalogChangeLog {
+    private final String epoch = UUID.randomUUID().toString();
+    private final int capacity;
+    private final Deque<CatalogChange> changes = new ArrayDeque<>();
+    private long version;
+
+    public CatalogChangeLog(@Value("${hotel.catalog-changes.capacity:1000}") int capacity) {
+        this.capacity = capacity;
+    }
+
+    // Записывается только закоммиченное изменение
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onChanged(CatalogChangedEvent event) {
+        version++;
+        changes.addLast(new CatalogChange(version, event.type().name(), event.hotelId(), event.roomId()));
+        if (changes.size() > capacity) {
+            changes.removeFirst();
+        }
+    }
+
+    public synchronized CatalogChanges since(String clientEpoch, long after) {
+        long oldest = changes.isEmpty() ? version + 1 : changes.peekFirst().version();
+        if (!epoch.equals(clientEpoch) || after > version || after < oldest - 1) {
+            return new CatalogChanges(epoch, version, true, List.of());
+        }
+        List<CatalogChange> newer = changes.stream()
+                .filter(c -> c.version() > after)
+                .toList();
+        return new CatalogChanges(epoch, version, false, newer);
+    }
+}
@@ -0,0 +1,6 @@
+package shvalieva.service;
+
+// Изменение каталога администратором: отель целиком или отдельный номер отеля hotelId
+public record CatalogChangedEvent(Type type, Long hotelId, Long roomId) {
+    public enum Type { HOTEL, ROOM }
+}
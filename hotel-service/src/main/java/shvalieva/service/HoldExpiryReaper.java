@@ -0,0 +1,163 @@
+package shvalieva.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import shvalieva.dto.LockEvent;
+import shvalieva.entity.RoomReservationLock;
+import shvalieva.outbox.OutboxWriter;
+import shvalieva.repository.RoomReservationLockRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Срок жизни удержаний HELD. Каждое удержание ставится в колесо таймеров на свой срок,
+ * подтверждение или снятие убирает его оттуда; раз в тик истёкшие удержания снимаются пакетами.
+ * Истечение срока действует и без этой задачи: проверка конфликтов и подтверждение смотрят на expiresAt,
+ * снятие нужно, чтобы освободить даты в индексе доступности и не держать мёртвые строки HELD.
+ */
+@Component
+public class HoldExpiryReaper {
+    private static final Logger log = LoggerFactory.getLogger(HoldExpiryReaper.class);
+    // 4 уровня по 64 слота: при тике в 1 с колесо покрывает около полугода
+    private static final int WHEEL_LEVELS = 4;
+
+    private final RoomReservationLockRepository lockRepository;
+    private final RoomAvailabilityIndex availabilityIndex;
+    private final RoomLockManager roomLocks;
+    private final OutboxWriter outbox;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+    private final long tickMs;
+    private final int batchSize;
+    private final TimingWheel<Long> wheel;
+    private final Counter expired;
+
+    public HoldExpiryReaper(RoomReservationLockRepository lockRepository,
+                            RoomAvailabilityIndex availabilityIndex,
+                            RoomLockManager roomLocks,
+                            OutboxWriter outbox,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry,
+                            @Value("${hotel.holds.ttl-seconds:900}") long ttlSeconds,
+                            @Value("${hotel.holds.tick-ms:1000}") long tickMs,
+                            @Value("${hotel.holds.reap-batch-size:500}") int batchSize) {
+        this.lockRepository = lockRepository;
+        this.availabilityIndex = availabilityIndex;
+        this.roomLocks = roomLocks;
+        this.outbox = outbox;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.tickMs = tickMs;
+        this.batchSize = batchSize;
+        this.wheel = new TimingWheel<>(WHEEL_LEVELS, tickOf(Instant.now()));
+        this.expired = Counter.builder("hotel.holds.expired")
+                .description("HELD locks released after their TTL")
+                .register(meterRegistry);
+        Gauge.builder("hotel.holds.scheduled", wheel, TimingWheel::size)
+                .description("HELD locks waiting for expiry in the timing wheel")
+                .register(meterRegistry);
+    }
+
+    // После рестарта колесо пустое: все HELD из БД ставятся заново, просроченные снимутся первым тиком
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        List<RoomReservationLock> held = transactionTemplate.execute(status -> {
+            lockRepository.assignMissingExpiry(expiresAt());
+            return lockRepository.findByStatusIn(List.of(RoomReservationLock.Status.HELD));
+        });
+        held.forEach(lock -> wheel.schedule(lock.getId(), deadlineTick(lock.getExpiresAt())));
+        log.info("Hold expiry wheel warmed up: {} held locks", held.size());
+    }
+
+    public Instant expiresAt() {
+        return Instant.now().plus(ttl);
+    }
+
+    public static boolean isExpired(RoomReservationLock lock, Instant now) {
+        return lock.getStatus() == RoomReservationLock.Status.HELD
+                && lock.getExpiresAt() != null
+                && !lock.getExpiresAt().isAfter(now);
+    }
+
+    // Срок ставится после коммита удержания, снимается после коммита подтверждения или снятия
+    public void schedule(RoomReservationLock lock) {
+        Long id = lock.getId();
+        long deadline = deadlineTick(lock.getExpiresAt());
+        afterCommit(() -> wheel.schedule(id, deadline));
+    }
+
+    public void cancel(RoomReservationLock lock) {
+        Long id = lock.getId();
+        afterCommit(() -> wheel.cancel(id));
+    }
+
+    @Scheduled(fixedDelayString = "${hotel.holds.tick-ms:1000}")
+    public void reap() {
+        List<Long> due = wheel.advance(tickOf(Instant.now()));
+        for (int from = 0; from < due.size(); from += batchSize) {
+            List<Long> batch = due.subList(from, Math.min(due.size(), from + batchSize));
+            try {
+                Integer released = transactionTemplate.execute(status -> releaseExpired(batch));
+                expired.increment(released);
+            } catch (RuntimeException e) {
+                // Повтор на следующем тике
+                long retryTick = wheel.currentTick() + 1;
+                batch.forEach(id -> wheel.schedule(id, retryTick));
+                log.warn("Failed to release {} expired holds", batch.size(), e);
+            }
+        }
+    }
+
+    // Под блокировками номеров статус перечитывается: удержание могли подтвердить после срабатывания таймера
+    private int releaseExpired(List<Long> ids) {
+        roomLocks.lockAllUntilCompletion(lockRepository.findRoomIds(ids));
+        List<RoomReservationLock> locks = lockRepository.findExpiredHeld(ids, Instant.now());
+        if (locks.isEmpty()) {
+            return 0;
+        }
+        lockRepository.updateStatus(locks.stream().map(RoomReservationLock::getId).toList(),
+                RoomReservationLock.Status.RELEASED);
+        locks.forEach(lock -> {
+            availabilityIndex.onReleased(lock);
+            outbox.append(LockEvent.AGGREGATE, lock.getId(), RoomReservationLock.Status.RELEASED.name(),
+                    LockEvent.of(lock, RoomReservationLock.Status.RELEASED));
+        });
+        return locks.size();
+    }
+
+    private long tickOf(Instant instant) {
+        return instant.toEpochMilli() / tickMs;
+    }
+
+    // Округление вверх: удержание не снимается раньше срока
+    private long deadlineTick(Instant expiresAt) {
+        return expiresAt == null ? tickOf(expiresAt()) : Math.floorDiv(expiresAt.toEpochMilli() + tickMs - 1, tickMs);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -1,112 +1,538 @@
 package shvalieva.service;
 
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.DigestUtils;
+import shvalieva.dto.BatchHoldItem;
+import shvalieva.dto.BatchItemResult;
+import shvalieva.dto.BatchResult;
+import shvalieva.dto.HotelView;
+import shvalieva.dto.LockEvent;
+import shvalieva.dto.PopularRoom;
+import shvalieva.dto.RoomPage;
+import shvalieva.dto.RoomSort;
+import shvalieva.dto.RoomSummary;
+import shvalieva.dto.RoomView;
+import shvalieva.dto.VersionStamp;
 import shvalieva.entity.Hotel;
 import shvalieva.entity.Room;
 import shvalieva.entity.RoomReservationLock;
+import shvalieva.outbox.OutboxWriter;
 import shvalieva.repository.HotelRepository;
 import shvalieva.repository.RoomRepository;
 import shvalieva.repository.RoomReservationLockRepository;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDate;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class HotelService {
+    private static final String ARCHIVED = "Удержание перенесено в архив и не может быть изменено";
+
     private final HotelRepository hotelRepository;
     private final RoomRepository roomRepository;
     private final RoomReservationLockRepository lockRepository;
+    private final RoomAvailabilityIndex availabilityIndex;
+    private final RoomLockManager roomLocks;
+    private final PopularityLeaderboard leaderboard;
+    private final RoomBookingCounters bookingCounters;
+    private final HoldExpiryReaper holdExpiry;
+    private final OutboxWriter outbox;
+    private final ApplicationEventPublisher events;
 
     public HotelService(HotelRepository hotelRepository, RoomRepository roomRepository,
-                        RoomReservationLockRepository lockRepository) {
+                        RoomReservationLockRepository lockRepository,
+                        RoomAvailabilityIndex availabilityIndex,
+                        RoomLockManager roomLocks,
+                        PopularityLeaderboard leaderboard,
+                        RoomBookingCounters bookingCounters,
+                        HoldExpiryReaper holdExpiry,
+                        OutboxWriter outbox,
+                        ApplicationEventPublisher events) {
         this.hotelRepository = hotelRepository;
         this.roomRepository = roomRepository;
         this.lockRepository = lockRepository;
+        this.availabilityIndex = availabilityIndex;
+        this.roomLocks = roomLocks;
+        this.leaderboard = leaderboard;
+        this.bookingCounters = bookingCounters;
+        this.holdExpiry = holdExpiry;
+        this.outbox = outbox;
+        this.events = events;
     }
 
     // CRUD-операции
-    public List<Hotel> listHotels() { return hotelRepository.findAll(); }
     public Optional<Hotel> getHotel(Long id) { return hotelRepository.findById(id); }
-    public Hotel saveHotel(Hotel h) { return hotelRepository.save(h); }
-    public void deleteHotel(Long id) { hotelRepository.deleteById(id); }
 
-    public List<Room> listRooms() { return roomRepository.findAll(); }
+    // Чтение каталога для API: отели с номерами одним запросом и сразу в DTO,
+    // чтобы сериализация не трогала ленивые связи сущностей
+    @Transactional(readOnly = true)
+    public List<HotelView> listHotelViews() {
+        return hotelRepository.findAllWithRooms().stream().map(HotelView::of).toList();
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<HotelView> getHotelView(Long id) {
+        return hotelRepository.findWithRoomsById(id).map(HotelView::of);
+    }
+    @Transactional
+    public Hotel saveHotel(Hotel h) {
+        // timesBooked из тела не берётся: у новых номеров 0, у существующих — значение из БД
+        h.getRooms().forEach(r -> r.setTimesBooked(0));
+        if (h.getId() != null) {
+            adoptCurrentVersions(h);
+        }
+        Hotel saved = hotelRepository.save(h);
+        // номера сохраняются каскадом, лишние удаляются orphanRemoval
+        leaderboard.replaceHotelRooms(saved.getId(), saved.getRooms(), room -> timesBooked(room.getId()));
+        events.publishEvent(new CatalogChangedEvent(CatalogChangedEvent.Type.HOTEL, saved.getId(), null));
+        return saved;
+    }
+    public void deleteHotel(Long id) {
+        hotelRepository.deleteById(id);
+        leaderboard.removeHotel(id);
+        events.publishEvent(new CatalogChangedEvent(CatalogChangedEvent.Type.HOTEL, id, null));
+    }
+
+    // Список номеров keyset-страницами: стоимость страницы не зависит от её глубины, в отличие от offset
+    public RoomPage listRooms(RoomSort sort, boolean descending, String after, int size) {
+        Long afterTimesBooked = null;
+        Long afterId = null;
+        if (after != null && !after.isBlank()) {
+            if (sort == RoomSort.ID) {
+                afterId = Long.parseLong(after);
+            } else {
+                int sep = after.indexOf('_');
+                if (sep < 0) {
+                    throw new IllegalArgumentException("Некорректный курсор: " + after);
+                }
+                afterTimesBooked = Long.parseLong(after.substring(0, sep));
+                afterId = Long.parseLong(after.substring(sep + 1));
+            }
+        }
+        // Лишняя строка показывает, есть ли следующая страница
+        List<RoomSummary> items = roomRepository.findSummaries(sort, descending, afterTimesBooked, afterId, size + 1);
+        if (items.size() <= size) {
+            return new RoomPage(items, null);
+        }
+        items = items.subList(0, size);
+        RoomSummary last = items.get(size - 1);
+        String next = sort == RoomSort.ID
+                ? String.valueOf(last.id())
+                : last.timesBooked() + "_" + last.id();
+        return new RoomPage(items, next);
+    }
+
+    /**
+     * Свободные на [startDate, endDate] номера города с вместимостью не меньше capacity.
+     * Занятость берётся из календаря индекса без обращения к БД; до прогрева индекса — запросом по каждому номеру.
+     */
+    public List<RoomSummary> searchAvailable(String city, int capacity, LocalDate startDate, LocalDate endDate, int limit) {
+        if (endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("Дата окончания раньше даты начала");
+        }
+        boolean indexed = availabilityIndex.isWarmedUp();
+        return roomRepository.findSearchCandidates(city, capacity).stream()
+                .filter(r -> indexed
+                        ? !availabilityIndex.mayConflict(r.id(), startDate, endDate)
+                        : !hasConflict(r.id(), startDate, endDate))
+                .limit(limit)
+                .toList();
+    }
+
+    // Все номера без загрузки в память: строки читаются курсором и сразу передаются потребителю
+    @Transactional(readOnly = true)
+    public void streamRooms(RoomSort sort, boolean descending, Consumer<RoomSummary> consumer) {
+        try (Stream<RoomSummary> rooms = roomRepository.streamSummaries(sort, descending)) {
+            rooms.forEach(consumer);
+        }
+    }
+
     public Optional<Room> getRoom(Long id) { return roomRepository.findById(id); }
-    public Room saveRoom(Room r) { return roomRepository.save(r); }
-    public void deleteRoom(Long id) { roomRepository.deleteById(id); }
+    public Optional<RoomView> getRoomView(Long id) { return roomRepository.findById(id).map(RoomView::of); }
+    // Транзакция нужна и рейтингу: его изменение откатывается вместе с ней.
+    // timesBooked ведут подтверждения, значение из тела запроса не используется
+    @Transactional
+    public Room saveRoom(Room r) {
+        if (r.getId() != null) {
+            roomRepository.findVersionById(r.getId()).ifPresent(r::setVersion);
+        }
+        r.setTimesBooked(r.getId() == null ? 0 : roomRepository.findTimesBookedById(r.getId()).orElse(0L));
+        Room saved = roomRepository.save(r);
+        leaderboard.upsert(saved, timesBooked(saved.getId()));
+        events.publishEvent(new CatalogChangedEvent(CatalogChangedEvent.Type.ROOM, hotelIdOf(saved), saved.getId()));
+        return saved;
+    }
+    public void deleteRoom(Long id) {
+        Long hotelId = roomRepository.findById(id).map(HotelService::hotelIdOf).orElse(null);
+        roomRepository.deleteById(id);
+        leaderboard.remove(id);
+        events.publishEvent(new CatalogChangedEvent(CatalogChangedEvent.Type.ROOM, hotelId, id));
+    }
+
+    private long timesBooked(Long roomId) {
+        return bookingCounters.current(roomId, id -> roomRepository.findTimesBookedById(id).orElse(0L));
+    }
+
+    private static Long hotelIdOf(Room room) {
+        return room.getHotel() == null ? null : room.getHotel().getId();
+    }
+
+    // Администратор перезаписывает отель целиком (последняя запись побеждает), поэтому версии и timesBooked
+    // берутся из БД, а не из тела запроса; @Version нужен для ETag, а не для отказа в записи
+    private void adoptCurrentVersions(Hotel h) {
+        hotelRepository.findById(h.getId()).ifPresent(current -> {
+            h.setVersion(current.getVersion());
+            Map<Long, Room> currentRooms = current.getRooms().stream()
+                    .collect(Collectors.toMap(Room::getId, r -> r));
+            h.getRooms().forEach(r -> {
+                Room stored = r.getId() == null ? null : currentRooms.get(r.getId());
+                if (stored != null) {
+                    r.setVersion(stored.getVersion());
+                    r.setTimesBooked(stored.getTimesBooked());
+                }
+            });
+        });
+    }
+
+    // ETag для условных GET: считаются агрегатными запросами по версиям, без загрузки сущностей.
+    // timesBooked обновляется в обход JPA и версию не меняет, поэтому входит в отпечаток отдельно
+    public Optional<String> hotelEtag(Long id) {
+        return hotelRepository.findVersionById(id)
+                .map(version -> etag("hotel", id, version, roomRepository.stampByHotel(id)));
+    }
+
+    public String hotelsEtag() {
+        return etag("hotels", hotelRepository.stampAll(), roomRepository.stampAll());
+    }
+
+    public Optional<String> roomEtag(Long id) {
+        return roomRepository.stampById(id)
+                .map(stamp -> etag("room", stamp, roomRepository.findHotelVersionByRoomId(id).orElse(-1L)));
+    }
+
+    // Страницы /hotels/rooms: ETag один на все параметры, он сравнивается только в пределах одного URL
+    public String roomsEtag() {
+        return etag("rooms", roomRepository.stampAll());
+    }
+
+    private static String etag(Object... parts) {
+        StringBuilder sb = new StringBuilder();
+        for (Object part : parts) {
+            if (part instanceof VersionStamp s) {
+                sb.append(s.count()).append(':').append(s.idSum()).append(':')
+                        .append(s.versionSum()).append(':').append(s.timesBookedSum());
+            } else {
+                sb.append(part);
+            }
+            sb.append('|');
+        }
+        return "\"" + DigestUtils.md5DigestAsHex(sb.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
 
     // Доступность: удержание/подтверждение/освобождение с идемпотентностью по requestId
     @Transactional
     public RoomReservationLock holdRoom(String requestId, Long roomId, LocalDate startDate, LocalDate endDate) {
-        Optional<RoomReservationLock> existing = lockRepository.findByRequestId(requestId);
+        // Удержания одного номера выполняются строго по очереди до коммита
+        roomLocks.lockUntilCompletion(roomId);
+        Optional<RoomReservationLock> existing = findLock(requestId);
         if (existing.isPresent()) {
             return existing.get();
         }
-        // Проверка конфликтующих удержаний или подтверждений
-        List<RoomReservationLock> conflicts = lockRepository
-                .findByRoomIdAndStatusInAndStartDateLessThanEqualAndEndDateGreaterThanEqual(
-                        roomId,
-                        Arrays.asList(RoomReservationLock.Status.HELD, RoomReservationLock.Status.CONFIRMED),
-                        endDate,
-                        startDate
-                );
-        if (!conflicts.isEmpty()) {
+        if (hasConflict(roomId, startDate, endDate)) {
             throw new IllegalStateException("Номер недоступен на указанные даты");
         }
+        RoomReservationLock saved = lockRepository.save(
+                newHold(requestId, roomId, startDate, endDate, holdExpiry.expiresAt()));
+        availabilityIndex.onHeld(saved);
+        holdExpiry.schedule(saved);
+        publish(saved, RoomReservationLock.Status.HELD);
+        return saved;
+    }
+
+    // Проверка конфликтующих удержаний или подтверждений. Индекс в памяти свой у каждого экземпляра и не видит
+    // удержаний, сделанных на других, поэтому он только отсекает заранее известные пересечения, а решает всегда
+    // запрос к БД (его обслуживает индекс (roomId, status, startDate, endDate)). Истёкшие удержания даты
+    // не занимают, даже если фоновая задача их ещё не сняла
+    private boolean hasConflict(Long roomId, LocalDate startDate, LocalDate endDate) {
+        return availabilityIndex.mayConflict(roomId, startDate, endDate)
+                || !lockRepository.findActiveOverlapping(roomId, startDate, endDate, Instant.now()).isEmpty();
+    }
+
+    private static RoomReservationLock newHold(String requestId, Long roomId, LocalDate startDate, LocalDate endDate,
+                                               Instant expiresAt) {
         RoomReservationLock lock = new RoomReservationLock();
         lock.setRequestId(requestId);
         lock.setRoomId(roomId);
         lock.setStartDate(startDate);
         lock.setEndDate(endDate);
         lock.setStatus(RoomReservationLock.Status.HELD);
-        return lockRepository.save(lock);
+        lock.setExpiresAt(expiresAt);
+        return lock;
     }
 
     @Transactional
     public RoomReservationLock confirmHold(String requestId) {
-        RoomReservationLock lock = lockRepository.findByRequestId(requestId)
+        lockRoomOf(requestId);
+        RoomReservationLock lock = findLock(requestId)
                 .orElseThrow(() -> new IllegalStateException("Удержание не найдено"));
         if (lock.getStatus() == RoomReservationLock.Status.CONFIRMED) {
             return lock; // идемпотентность
         }
+        if (lock.isArchived()) {
+            throw new IllegalStateException(ARCHIVED);
+        }
         if (lock.getStatus() == RoomReservationLock.Status.RELEASED) {
             throw new IllegalStateException("Удержание уже снято");
         }
+        // Даты истёкшего удержания могли быть уже заняты другим
+        if (HoldExpiryReaper.isExpired(lock, Instant.now())) {
+            throw new IllegalStateException("Срок удержания истёк");
+        }
         lock.setStatus(RoomReservationLock.Status.CONFIRMED);
-        // Увеличиваем счётчик бронирований для статистики
-        roomRepository.findById(lock.getRoomId()).ifPresent(room -> {
-            room.setTimesBooked(room.getTimesBooked() + 1);
-            roomRepository.save(room);
-        });
-        return lockRepository.save(lock);
+        RoomReservationLock saved = saveChecked(lock);
+        availabilityIndex.onConfirmed(saved);
+        holdExpiry.cancel(saved);
+        // Счётчик бронирований для статистики: строка room не блокируется, запись отложенная
+        bookingCounters.add(saved.getRoomId(), 1);
+        leaderboard.increment(saved.getRoomId(), 1);
+        publish(saved, RoomReservationLock.Status.CONFIRMED);
+        return saved;
     }
 
     @Transactional
     public RoomReservationLock releaseHold(String requestId) {
-        RoomReservationLock lock = lockRepository.findByRequestId(requestId)
+        lockRoomOf(requestId);
+        RoomReservationLock lock = findLock(requestId)
                 .orElseThrow(() -> new IllegalStateException("Удержание не найдено"));
-        if (lock.getStatus() == RoomReservationLock.Status.RELEASED) {
-            return lock; // идемпотентность
+        if (lock.getStatus() == RoomReservationLock.Status.RELEASED || lock.isArchived()) {
+            return lock; // идемпотентность; архивная запись не меняется
         }
         if (lock.getStatus() == RoomReservationLock.Status.CONFIRMED) {
             return lock; // уже подтверждено; ничего не делаем для идемпотентности
         }
         lock.setStatus(RoomReservationLock.Status.RELEASED);
-        return lockRepository.save(lock);
+        RoomReservationLock saved = saveChecked(lock);
+        availabilityIndex.onReleased(saved);
+        holdExpiry.cancel(saved);
+        publish(saved, RoomReservationLock.Status.RELEASED);
+        return saved;
     }
 
-    public List<Room> popularRooms() {
-        return roomRepository.findAll()
-                .stream()
-                .sorted(
-                        java.util.Comparator
-                                .comparingLong(Room::getTimesBooked)
-                                .reversed()
-                )
-                .toList();
+    // Блокировка номера берётся до чтения удержания, как в holdRoom и HoldExpiryReaper:
+    // иначе проверка статуса под блокировкой шла бы по состоянию, прочитанному до неё
+    private void lockRoomOf(String requestId) {
+        lockRepository.findRoomIdByRequestId(requestId).ifPresent(roomLocks::lockUntilCompletion);
+    }
+
+    // Смена статуса сразу уходит в БД: конфликт версий (запись по устаревшему состоянию) — это 409,
+    // и побочные эффекты ниже не выполняются
+    private RoomReservationLock saveChecked(RoomReservationLock lock) {
+        if (lock.isArchived()) {
+            throw new IllegalStateException(ARCHIVED);
+        }
+        try {
+            return lockRepository.saveAndFlush(lock);
+        } catch (OptimisticLockingFailureException e) {
+            throw new IllegalStateException("Удержание изменено параллельно", e);
+        }
+    }
+
+    // Пакетные операции: одна транзакция, всё или ничего, результат по каждому элементу
+    @Transactional
+    public BatchResult holdRooms(List<BatchHoldItem> items) {
+        List<BatchHoldItem> valid = items.stream().filter(item -> invalidHoldItem(item) == null).toList();
+        roomLocks.lockAllUntilCompletion(valid.stream().map(BatchHoldItem::roomId).toList());
+        Map<String, RoomReservationLock> existing = byRequestId(valid.stream().map(BatchHoldItem::requestId).toList());
+
+        List<BatchItemResult> results = new ArrayList<>(items.size());
+        List<RoomReservationLock> toInsert = new ArrayList<>();
+        Map<String, RoomReservationLock> accepted = new HashMap<>();
+        Instant expiresAt = holdExpiry.expiresAt();
+        boolean failed = false;
+        for (BatchHoldItem item : items) {
+            String invalid = invalidHoldItem(item);
+            if (invalid != null) {
+                results.add(BatchItemResult.failed(item.requestId(), item.roomId(), invalid));
+                failed = true;
+                continue;
+            }
+            RoomReservationLock known = existing.getOrDefault(item.requestId(), accepted.get(item.requestId()));
+            if (known != null) {
+                results.add(BatchItemResult.ok(known)); // идемпотентность
+                continue;
+            }
+            boolean overlapsBatch = toInsert.stream().anyMatch(l -> l.getRoomId().equals(item.roomId())
+                    && !l.getStartDate().isAfter(item.endDate()) && !l.getEndDate().isBefore(item.startDate()));
+            if (overlapsBatch || hasConflict(item.roomId(), item.startDate(), item.endDate())) {
+                results.add(BatchItemResult.failed(item.requestId(), item.roomId(), "Номер недоступен на указанные даты"));
+                failed = true;
+                continue;
+            }
+            RoomReservationLock lock = newHold(item.requestId(), item.roomId(), item.startDate(), item.endDate(),
+                    expiresAt);
+            toInsert.add(lock);
+            accepted.put(item.requestId(), lock);
+            results.add(BatchItemResult.ok(lock));
+        }
+        if (failed) {
+            return new BatchResult(false, results);
+        }
+
+        lockRepository.batchInsert(toInsert);
+        Map<String, RoomReservationLock> inserted = byRequestId(accepted.keySet());
+        inserted.values().forEach(lock -> {
+            availabilityIndex.onHeld(lock);
+            holdExpiry.schedule(lock);
+            publish(lock, RoomReservationLock.Status.HELD);
+        });
+        return new BatchResult(true, results.stream()
+                .map(r -> inserted.containsKey(r.requestId()) ? BatchItemResult.ok(inserted.get(r.requestId())) : r)
+                .toList());
+    }
+
+    // Причина, по которой элемент пакета не может быть удержан, или null
+    private static String invalidHoldItem(BatchHoldItem item) {
+        if (item.requestId() == null || item.roomId() == null || item.startDate() == null || item.endDate() == null) {
+            return "Не указаны requestId, roomId или даты";
+        }
+        if (item.endDate().isBefore(item.startDate())) {
+            return "Дата окончания раньше даты начала";
+        }
+        return null;
+    }
+
+    @Transactional
+    public BatchResult confirmHolds(List<String> requestIds) {
+        Map<String, RoomReservationLock> locks = lockAndLoad(requestIds);
+        List<BatchItemResult> results = new ArrayList<>(requestIds.size());
+        Map<Long, RoomReservationLock> toConfirm = new LinkedHashMap<>();
+        Instant now = Instant.now();
+        boolean failed = false;
+        for (String requestId : requestIds) {
+            RoomReservationLock lock = locks.get(requestId);
+            if (lock == null) {
+                results.add(BatchItemResult.failed(requestId, null, "Удержание не найдено"));
+                failed = true;
+            } else if (lock.isArchived() && lock.getStatus() != RoomReservationLock.Status.CONFIRMED) {
+                results.add(BatchItemResult.failed(requestId, lock.getRoomId(), ARCHIVED));
+                failed = true;
+            } else if (lock.getStatus() == RoomReservationLock.Status.RELEASED) {
+                results.add(BatchItemResult.failed(requestId, lock.getRoomId(), "Удержание уже снято"));
+                failed = true;
+            } else if (HoldExpiryReaper.isExpired(lock, now)) {
+                results.add(BatchItemResult.failed(requestId, lock.getRoomId(), "Срок удержания истёк"));
+                failed = true;
+            } else {
+                if (lock.getStatus() == RoomReservationLock.Status.HELD) {
+                    toConfirm.put(lock.getId(), lock);
+                }
+                results.add(new BatchItemResult(requestId, lock.getRoomId(), lock.getId(),
+                        RoomReservationLock.Status.CONFIRMED, null));
+            }
+        }
+        if (failed || toConfirm.isEmpty()) {
+            return new BatchResult(!failed, results);
+        }
+
+        lockRepository.updateStatus(toConfirm.keySet(), RoomReservationLock.Status.CONFIRMED);
+        toConfirm.values().forEach(lock -> {
+            availabilityIndex.onConfirmed(lock);
+            holdExpiry.cancel(lock);
+            publish(lock, RoomReservationLock.Status.CONFIRMED);
+        });
+        // Счётчики бронирований: одно приращение на номер
+        toConfirm.values().stream()
+                .collect(Collectors.groupingBy(RoomReservationLock::getRoomId, Collectors.counting()))
+                .forEach((roomId, delta) -> {
+                    bookingCounters.add(roomId, delta);
+                    leaderboard.increment(roomId, delta);
+                });
+        return new BatchResult(true, results);
+    }
+
+    @Transactional
+    public BatchResult releaseHolds(List<String> requestIds) {
+        Map<String, RoomReservationLock> locks = lockAndLoad(requestIds);
+        List<BatchItemResult> results = new ArrayList<>(requestIds.size());
+        Map<Long, RoomReservationLock> toRelease = new LinkedHashMap<>();
+        boolean failed = false;
+        for (String requestId : requestIds) {
+            RoomReservationLock lock = locks.get(requestId);
+            if (lock == null) {
+                results.add(BatchItemResult.failed(requestId, null, "Удержание не найдено"));
+                failed = true;
+                continue;
+            }
+            // Подтверждённые и уже снятые удержания не меняются (идемпотентность)
+            RoomReservationLock.Status status = lock.getStatus();
+            if (status == RoomReservationLock.Status.HELD && !lock.isArchived()) {
+                toRelease.put(lock.getId(), lock);
+                status = RoomReservationLock.Status.RELEASED;
+            }
+            results.add(new BatchItemResult(requestId, lock.getRoomId(), lock.getId(), status, null));
+        }
+        if (failed || toRelease.isEmpty()) {
+            return new BatchResult(!failed, results);
+        }
+
+        lockRepository.updateStatus(toRelease.keySet(), RoomReservationLock.Status.RELEASED);
+        toRelease.values().forEach(lock -> {
+            availabilityIndex.onReleased(lock);
+            holdExpiry.cancel(lock);
+            publish(lock, RoomReservationLock.Status.RELEASED);
+        });
+        return new BatchResult(true, results);
+    }
+
+    // Событие пишется в outbox той же транзакцией, что и смена статуса: без коммита нет и события
+    private void publish(RoomReservationLock lock, RoomReservationLock.Status status) {
+        outbox.append(LockEvent.AGGREGATE, lock.getId(), status.name(), LockEvent.of(lock, status));
+    }
+
+    // Сначала блокировки номеров, затем чтение удержаний — статусы под блокировками актуальны
+    private Map<String, RoomReservationLock> lockAndLoad(List<String> requestIds) {
+        roomLocks.lockAllUntilCompletion(lockRepository.findRoomIdsByRequestIdIn(requestIds));
+        return byRequestId(requestIds);
+    }
+
+    // Удержание по requestId; перенесённые в архив ищутся там, чтобы повторы оставались идемпотентными
+    private Optional<RoomReservationLock> findLock(String requestId) {
+        Optional<RoomReservationLock> lock = lockRepository.findByRequestId(requestId);
+        return lock.isPresent() ? lock : lockRepository.findArchivedByRequestId(requestId);
+    }
+
+    private Map<String, RoomReservationLock> byRequestId(Collection<String> requestIds) {
+        Map<String, RoomReservationLock> locks = lockRepository.findByRequestIdIn(requestIds).stream()
+                .collect(Collectors.toMap(RoomReservationLock::getRequestId, Function.identity()));
+        List<String> missing = requestIds.stream().filter(id -> !locks.containsKey(id)).distinct().toList();
+        if (!missing.isEmpty()) {
+            lockRepository.findArchivedByRequestIdIn(missing).forEach(l -> locks.put(l.getRequestId(), l));
+        }
+        return locks;
+    }
+
+    // Популярность номеров: из рейтинга в памяти, без запроса к БД
+    public List<PopularRoom> popularRooms() {
+        return leaderboard.all();
+    }
+
+    public List<PopularRoom> popularRooms(int page, int size) {
+        return leaderboard.top(page * size, size);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+package shvalieva.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import shvalieva.entity.RoomReservationLock;
+import shvalieva.repository.RoomReservationLockRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Перенос истории удержаний в архив: снятые (RELEASED) и закончившиеся по датам строки уходят
+ * в room_reservation_lock_archive пакетами по batch-size, каждый пакет — отдельная короткая транзакция.
+ * Рабочая таблица, по которой идёт проверка пересечений, растёт с будущим инвентарём, а не со всей историей.
+ */
+@Component
+public class LockArchiver {
+    private static final Logger log = LoggerFactory.getLogger(LockArchiver.class);
+
+    private final RoomReservationLockRepository lockRepository;
+    private final RoomAvailabilityIndex availabilityIndex;
+    private final HoldExpiryReaper holdExpiry;
+    private final RoomLockManager roomLocks;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxBatches;
+    private final Counter archived;
+
+    public LockArchiver(RoomReservationLockRepository lockRepository,
+                        RoomAvailabilityIndex availabilityIndex,
+                        HoldExpiryReaper holdExpiry,
+                        RoomLockManager roomLocks,
+                        PlatformTransactionManager transactionManager,
+                        MeterRegistry meterRegistry,
+                        @Value("${hotel.locks.archive.batch-size:1000}") int batchSize,
+                        @Value("${hotel.locks.archive.max-batches:100}") int maxBatches) {
+        this.lockRepository = lockRepository;
+        this.availabilityIndex = availabilityIndex;
+        this.holdExpiry = holdExpiry;
+        this.roomLocks = roomLocks;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+        this.archived = Counter.builder("hotel.locks.archived")
+                .description("Reservation locks moved to the archive table")
+                .register(meterRegistry);
+    }
+
+    // За один запуск не больше max-batches пакетов, остаток — в следующий раз
+    @Scheduled(fixedDelayString = "${hotel.locks.archive.interval-ms:60000}")
+    public int archive() {
+        LocalDate today = LocalDate.now();
+        int total = 0;
+        for (int i = 0; i < maxBatches; i++) {
+            Integer moved = transactionTemplate.execute(status -> archiveBatch(today));
+            if (moved == null || moved == 0) {
+                break;
+            }
+            total += moved;
+        }
+        if (total > 0) {
+            archived.increment(total);
+            log.info("Archived {} reservation locks", total);
+        }
+        return total;
+    }
+
+    private int archiveBatch(LocalDate today) {
+        List<RoomReservationLock> candidates = lockRepository.findArchivable(today, batchSize);
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        // Под блокировками номеров строки перечитываются: удержание могли подтвердить между выборкой и блокировкой
+        roomLocks.lockAllUntilCompletion(candidates.stream().map(RoomReservationLock::getRoomId).toList());
+        List<RoomReservationLock> locks = lockRepository.findArchivableIn(
+                candidates.stream().map(RoomReservationLock::getId).toList(), today);
+        lockRepository.moveToArchive(locks.stream().map(RoomReservationLock::getId).toList());
+        // Индекс доступности и колесо сроков отражают только рабочую таблицу
+        locks.stream()
+                .filter(lock -> lock.getStatus() != RoomReservationLock.Status.RELEASED)
+                .forEach(lock -> {
+                    availabilityIndex.onReleased(lock);
+                    holdExpiry.cancel(lock);
+                });
+        // Пустой пакет при непустой выборке (строки изменились параллельно) завершает запуск
+        return locks.size();
+    }
+}
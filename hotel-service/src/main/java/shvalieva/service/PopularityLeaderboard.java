@@ -0,0 +1,173 @@
+package shvalieva.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import shvalieva.dto.PopularRoom;
+import shvalieva.entity.Room;
+import shvalieva.repository.RoomRepository;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Рейтинг популярности номеров (timesBooked по убыванию, затем id), поддерживаемый инкрементально.
+ * Отдаёт top-N и страницы без обращения к БД; после рестарта перестраивается по таблице room.
+ * Изменения видны сразу и откатываются вместе с транзакцией.
+ */
+@Component
+public class PopularityLeaderboard {
+    private static final Logger log = LoggerFactory.getLogger(PopularityLeaderboard.class);
+
+    private static final Comparator<PopularRoom> ORDER = Comparator
+            .comparingLong(PopularRoom::timesBooked).reversed()
+            .thenComparing(PopularRoom::id);
+
+    private final RoomRepository roomRepository;
+    private final NavigableSet<PopularRoom> ranking = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<Long, PopularRoom> byId = new ConcurrentHashMap<>();
+    private volatile boolean warmedUp;
+
+    public PopularityLeaderboard(RoomRepository roomRepository) {
+        this.roomRepository = roomRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        List<PopularRoom> rooms = roomRepository.findAllPopularity();
+        ranking.clear();
+        byId.clear();
+        rooms.forEach(r -> put(r.id(), r));
+        warmedUp = true;
+        log.info("Popularity leaderboard rebuilt: {} rooms", rooms.size());
+    }
+
+    public List<PopularRoom> top(int offset, int limit) {
+        ensureWarm();
+        return ranking.stream().skip(offset).limit(limit).toList();
+    }
+
+    public List<PopularRoom> all() {
+        ensureWarm();
+        return List.copyOf(ranking);
+    }
+
+    public void increment(Long roomId, long delta) {
+        if (adjust(roomId, delta)) {
+            onRollback(() -> adjust(roomId, -delta));
+        }
+    }
+
+    // timesBooked — с учётом ещё не сброшенных приращений (RoomBookingCounters.current), а не поле сущности
+    public void upsert(Room room, long timesBooked) {
+        PopularRoom before = byId.get(room.getId());
+        put(room.getId(), new PopularRoom(room.getId(), room.getNumber(), room.getCapacity(), timesBooked,
+                room.getHotel() != null ? room.getHotel().getId() : null));
+        onRollback(() -> put(room.getId(), before));
+    }
+
+    public void remove(Long roomId) {
+        PopularRoom before = byId.get(roomId);
+        if (before != null) {
+            put(roomId, null);
+            onRollback(() -> put(roomId, before));
+        }
+    }
+
+    public void removeHotel(Long hotelId) {
+        replaceHotelRooms(hotelId, List.of(), room -> 0);
+    }
+
+    // Состав номеров отеля после сохранения (каскад и orphanRemoval)
+    public void replaceHotelRooms(Long hotelId, List<Room> rooms, ToLongFunction<Room> timesBooked) {
+        Set<Long> kept = rooms.stream().map(Room::getId).collect(Collectors.toSet());
+        byId.values().stream()
+                .filter(r -> hotelId.equals(r.hotelId()) && !kept.contains(r.id()))
+                .map(PopularRoom::id)
+                .toList()
+                .forEach(this::remove);
+        rooms.forEach(room -> upsert(room, timesBooked.applyAsLong(room)));
+    }
+
+    private void ensureWarm() {
+        if (!warmedUp) {
+            rebuild();
+        }
+    }
+
+    private boolean adjust(Long roomId, long delta) {
+        if (delta == 0) {
+            return false;
+        }
+        boolean[] found = {false};
+        byId.computeIfPresent(roomId, (id, current) -> {
+            PopularRoom next = current.withTimesBooked(current.timesBooked() + delta);
+            replace(current, next);
+            found[0] = true;
+            return next;
+        });
+        return found[0];
+    }
+
+    // value == null — удалить
+    private void put(Long roomId, PopularRoom value) {
+        byId.compute(roomId, (id, current) -> {
+            replace(current, value);
+            return value;
+        });
+    }
+
+    private void replace(PopularRoom current, PopularRoom next) {
+        if (current != null && next != null && ORDER.compare(current, next) == 0) {
+            // та же позиция в рейтинге (например, сменился номер комнаты)
+            ranking.remove(current);
+            ranking.add(next);
+            return;
+        }
+        // Сначала добавляем новую запись, потом убираем старую: читатель может
+        // на мгновение увидеть номер дважды, но не потеряет его
+        if (next != null) {
+            ranking.add(next);
+        }
+        if (current != null) {
+            ranking.remove(current);
+        }
+    }
+
+    // Отмена изменений при откате — в обратном порядке (LIFO), одним обработчиком на транзакцию
+    @SuppressWarnings("unchecked")
+    private void onRollback(Runnable undo) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        Deque<Runnable> undos = (Deque<Runnable>) TransactionSynchronizationManager.getResource(this);
+        if (undos == null) {
+            Deque<Runnable> created = new ArrayDeque<>();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PopularityLeaderboard.this);
+                    if (status != STATUS_COMMITTED) {
+                        created.forEach(Runnable::run);
+                    }
+                }
+            });
+            undos = created;
+        }
+        undos.push(undo);
+    }
+}
@@ -0,0 +1,340 @@
+package shvalieva.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import shvalieva.entity.RoomReservationLock;
+import shvalieva.repository.RoomReservationLockRepository;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory индекс занятых интервалов (HELD/CONFIRMED) по каждому номеру.
+ * Интервалы одного номера не пересекаются и хранятся отсортированными по дате начала,
+ * поэтому проверка пересечения — один floorEntry, O(log n).
+ * Дополнительно для каждого номера ведётся календарь занятости: бит на сутки в скользящем окне
+ * от сегодняшней даты; проверка диапазона внутри окна — побитовые операции над словами long.
+ * Индекс свой у каждого экземпляра: прогревается при старте и обновляется только локальными удержаниями,
+ * подтверждениями и снятиями. Поэтому удержание отклоняется по нему лишь при известном пересечении, а ответ
+ * «свободно» всегда проверяется запросом к БД, которая остаётся источником истины.
+ * У удержаний HELD хранится срок: истёкшие, но ещё не снятые фоновой задачей, даты не занимают.
+ * Прогрев строит новую карту отдельно и подменяет её одной записью ссылки; изменения, пришедшие
+ * во время чтения из БД, журналируются и доигрываются на новой карте перед подменой.
+ */
+@Component
+public class RoomAvailabilityIndex {
+    private static final Logger log = LoggerFactory.getLogger(RoomAvailabilityIndex.class);
+
+    private static final List<RoomReservationLock.Status> ACTIVE =
+            List.of(RoomReservationLock.Status.HELD, RoomReservationLock.Status.CONFIRMED);
+
+    private final RoomReservationLockRepository lockRepository;
+    private final int windowDays;
+    // null до первого прогрева
+    private volatile Map<Long, RoomIntervals> rooms;
+    // Изменения применяются под read-блокировкой, прогрев начинает и завершает журнал под write-блокировкой
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private Queue<Change> journal;
+    // Удержания до завершения транзакции: в выборку прогрева они могут не попасть
+    private final Map<String, RoomReservationLock> inFlight = new ConcurrentHashMap<>();
+
+    public RoomAvailabilityIndex(RoomReservationLockRepository lockRepository,
+                                 @Value("${hotel.availability.window-days:730}") int windowDays) {
+        this.lockRepository = lockRepository;
+        // Окно округляется вверх до целого числа слов
+        this.windowDays = Math.max(64, (windowDays + 63) & ~63);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void warmUp() {
+        Queue<Change> changes = new ConcurrentLinkedQueue<>();
+        swapLock.writeLock().lock();
+        try {
+            inFlight.values().forEach(lock -> changes.add(new Change(lock, Op.PUT)));
+            journal = changes;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        List<RoomReservationLock> active = lockRepository.findByStatusIn(ACTIVE);
+        Map<Long, RoomIntervals> built = new ConcurrentHashMap<>();
+        active.forEach(lock -> change(built, new Change(lock, Op.PUT)));
+        swapLock.writeLock().lock();
+        try {
+            changes.forEach(c -> change(built, c));
+            rooms = built;
+            journal = null;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        log.info("Availability index warmed up: {} active locks, {} rooms", active.size(), built.size());
+    }
+
+    /**
+     * true — возможен конфликт (нужна проверка в БД), false — интервал гарантированно свободен.
+     * До прогрева индекса всегда возвращает true.
+     */
+    public boolean mayConflict(Long roomId, LocalDate startDate, LocalDate endDate) {
+        Map<Long, RoomIntervals> current = rooms;
+        if (current == null) {
+            return true;
+        }
+        RoomIntervals intervals = current.get(roomId);
+        return intervals != null && intervals.overlaps(startDate, endDate, LocalDate.now().toEpochDay(), Instant.now());
+    }
+
+    public boolean isWarmedUp() {
+        return rooms != null;
+    }
+
+    // Новое удержание видно сразу, при откате транзакции — убирается
+    public void onHeld(RoomReservationLock lock) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            inFlight.put(lock.getRequestId(), lock);
+        }
+        apply(new Change(lock, Op.PUT));
+        afterCompletion(lock, false);
+    }
+
+    // Подтверждённое удержание больше не истекает; применяется сразу — при откате интервал
+    // остаётся занятым до снятия удержания, что безопасно
+    public void onConfirmed(RoomReservationLock lock) {
+        apply(new Change(lock, Op.CONFIRM));
+    }
+
+    // Освобождение применяется только после коммита
+    public void onReleased(RoomReservationLock lock) {
+        afterCompletion(lock, true);
+    }
+
+    private void afterCompletion(RoomReservationLock lock, boolean removeOnCommit) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            if (removeOnCommit) {
+                apply(new Change(lock, Op.REMOVE));
+            }
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                boolean committed = status == STATUS_COMMITTED;
+                if (committed == removeOnCommit) {
+                    apply(new Change(lock, Op.REMOVE));
+                }
+                if (!removeOnCommit) {
+                    inFlight.remove(lock.getRequestId(), lock);
+                }
+            }
+        });
+    }
+
+    private void apply(Change change) {
+        swapLock.readLock().lock();
+        try {
+            Map<Long, RoomIntervals> current = rooms;
+            if (current != null) {
+                change(current, change);
+            }
+            if (journal != null) {
+                journal.add(change);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    // Повторное добавление того же удержания (выборка + журнал) ничего не меняет
+    private void change(Map<Long, RoomIntervals> target, Change change) {
+        RoomReservationLock lock = change.lock();
+        if (change.op() == Op.REMOVE) {
+            RoomIntervals intervals = target.get(lock.getRoomId());
+            if (intervals != null) {
+                intervals.remove(lock.getRequestId(), lock.getStartDate());
+            }
+            return;
+        }
+        Instant expiresAt = change.op() == Op.PUT && lock.getStatus() == RoomReservationLock.Status.HELD
+                ? lock.getExpiresAt() : null;
+        target.computeIfAbsent(lock.getRoomId(), id -> new RoomIntervals(windowDays))
+                .add(new Span(lock.getRequestId(), lock.getStartDate(), lock.getEndDate(), expiresAt));
+    }
+
+    private enum Op { PUT, CONFIRM, REMOVE }
+
+    private record Change(RoomReservationLock lock, Op op) {}
+
+    // expiresAt == null — интервал не истекает (подтверждение или удержание без срока)
+    private record Span(String requestId, LocalDate start, LocalDate end, Instant expiresAt) {
+        boolean activeAt(Instant now) {
+            return expiresAt == null || expiresAt.isAfter(now);
+        }
+
+        // Из двух записей одного удержания действует более поздний срок
+        Span extend(Span other) {
+            return expiresAt == null || other.expiresAt() != null && !other.expiresAt().isAfter(expiresAt)
+                    ? this : other;
+        }
+    }
+
+    private static final class RoomIntervals {
+        private final NavigableMap<LocalDate, Span> byStart = new TreeMap<>();
+        // Интервалы, пересёкшиеся с уже известными (исторические данные, незакоммиченные освобождения);
+        // обычно пусто, проверяются перебором
+        private final List<Span> overflow = new ArrayList<>();
+        // Календарь: бит i — сутки nightsOrigin + i (epoch day). Строится лениво и перестраивается
+        // при смене даты, поэтому окно сдвигается без отдельной фоновой задачи
+        private final int windowDays;
+        private long[] nights;
+        private long nightsOrigin;
+        // Ближайший срок среди отмеченных в календаре удержаний: после него календарь пересобирается
+        private Instant nightsValidUntil;
+
+        RoomIntervals(int windowDays) {
+            this.windowDays = windowDays;
+        }
+
+        synchronized boolean overlaps(LocalDate start, LocalDate end, long today, Instant now) {
+            long from = start.toEpochDay() - today;
+            long to = end.toEpochDay() - today;
+            if (from >= 0 && to < windowDays) {
+                if (nights == null || nightsOrigin != today || !now.isBefore(nightsValidUntil)) {
+                    rebuildNights(today, now);
+                }
+                return anySet(nights, (int) from, (int) to);
+            }
+            return overlapsSpans(start, end, now);
+        }
+
+        private boolean overlapsSpans(LocalDate start, LocalDate end, Instant now) {
+            // Границы включительные, как в запросе репозитория. Интервалы byStart не пересекаются,
+            // поэтому концы растут вместе с началами: обход вниз от floorEntry(end) до первого,
+            // закончившегося раньше start, пропускает только истёкшие удержания
+            for (Span span : byStart.headMap(end, true).descendingMap().values()) {
+                if (span.end().isBefore(start)) {
+                    break;
+                }
+                if (span.activeAt(now)) {
+                    return true;
+                }
+            }
+            for (Span span : overflow) {
+                if (!span.start().isAfter(end) && !span.end().isBefore(start) && span.activeAt(now)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized void add(Span span) {
+            Span known = byStart.get(span.start());
+            if (known != null && known.requestId().equals(span.requestId())) {
+                byStart.put(span.start(), known.extend(span));
+                invalidateIfExtended(known, span);
+                return;
+            }
+            for (int i = 0; i < overflow.size(); i++) {
+                Span listed = overflow.get(i);
+                if (listed.requestId().equals(span.requestId())) {
+                    overflow.set(i, listed.extend(span));
+                    invalidateIfExtended(listed, span);
+                    return;
+                }
+            }
+            Map.Entry<LocalDate, Span> floor = byStart.floorEntry(span.end());
+            if (floor != null && !floor.getValue().end().isBefore(span.start())) {
+                overflow.add(span);
+            } else {
+                byStart.put(span.start(), span);
+            }
+            if (nights != null) {
+                mark(span);
+            }
+        }
+
+        // Истёкший интервал мог быть не отмечен в календаре — после продления срока календарь пересобирается
+        private void invalidateIfExtended(Span known, Span update) {
+            if (known.extend(update) != known) {
+                nights = null;
+            }
+        }
+
+        synchronized void remove(String requestId, LocalDate start) {
+            Span span = byStart.get(start);
+            if (span != null && span.requestId().equals(requestId)) {
+                byStart.remove(start);
+            }
+            overflow.removeIf(s -> s.requestId().equals(requestId));
+            // Снятый интервал мог делить сутки с пересекающимися, поэтому календарь пересобирается
+            nights = null;
+        }
+
+        private void rebuildNights(long origin, Instant now) {
+            nights = new long[windowDays >>> 6];
+            nightsOrigin = origin;
+            nightsValidUntil = Instant.MAX;
+            byStart.values().stream().filter(span -> span.activeAt(now)).forEach(this::mark);
+            overflow.stream().filter(span -> span.activeAt(now)).forEach(this::mark);
+        }
+
+        private void mark(Span span) {
+            if (span.expiresAt() != null && span.expiresAt().isBefore(nightsValidUntil)) {
+                nightsValidUntil = span.expiresAt();
+            }
+            long from = Math.max(0, span.start().toEpochDay() - nightsOrigin);
+            long to = Math.min(windowDays - 1, span.end().toEpochDay() - nightsOrigin);
+            if (from <= to) {
+                setRange(nights, (int) from, (int) to);
+            }
+        }
+    }
+
+    // Диапазоны битов [from, to] включительно: крайние слова — по маске, внутренние — целиком
+    private static boolean anySet(long[] words, int from, int to) {
+        int first = from >>> 6;
+        int last = to >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - (to & 63));
+        if (first == last) {
+            return (words[first] & firstMask & lastMask) != 0;
+        }
+        if ((words[first] & firstMask) != 0) {
+            return true;
+        }
+        for (int i = first + 1; i < last; i++) {
+            if (words[i] != 0) {
+                return true;
+            }
+        }
+        return (words[last] & lastMask) != 0;
+    }
+
+    private static void setRange(long[] words, int from, int to) {
+        int first = from >>> 6;
+        int last = to >>> 6;
+        for (int i = first; i <= last; i++) {
+            long mask = -1L;
+            if (i == first) {
+                mask &= -1L << from;
+            }
+            if (i == last) {
+                mask &= -1L >>> (63 - (to & 63));
+            }
+            words[i] |= mask;
+        }
+    }
+}
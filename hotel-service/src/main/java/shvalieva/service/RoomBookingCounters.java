@@ -0,0 +1,126 @@
+package shvalieva.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import shvalieva.repository.RoomRepository;
+import shvalieva.repository.RoomReservationLockRepository;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Счётчики timesBooked с отложенной записью: подтверждение удержания не трогает строку room.
+ * Сброс раз в flush-interval отмечает неучтённые подтверждения учтёнными (флаг counted) и в той же транзакции
+ * прибавляет их число к times_booked одним пакетом UPDATE ... + delta. Источник истины — строки удержаний,
+ * а не память экземпляра: сброс и пересчёт при старте (только по учтённым строкам) согласованы, и несколько
+ * экземпляров не учитывают одно подтверждение дважды, а упавший не теряет свои.
+ * LongAdder номера — локальная поправка для чтения (current) до ближайшего сброса этого экземпляра;
+ * подтверждения других экземпляров в ней не видны, а учтённые чужим сбросом кратко видны дважды.
+ */
+@Component
+public class RoomBookingCounters {
+    private static final Logger log = LoggerFactory.getLogger(RoomBookingCounters.class);
+
+    private final RoomRepository roomRepository;
+    private final RoomReservationLockRepository lockRepository;
+    private final CatalogCacheEvictor cacheEvictor;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<Long, LongAdder> pending = new ConcurrentHashMap<>();
+
+    public RoomBookingCounters(RoomRepository roomRepository,
+                               RoomReservationLockRepository lockRepository,
+                               CatalogCacheEvictor cacheEvictor,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry) {
+        this.roomRepository = roomRepository;
+        this.lockRepository = lockRepository;
+        this.cacheEvictor = cacheEvictor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        Gauge.builder("hotel.room.counters.pending", this, RoomBookingCounters::pendingTotal)
+                .description("Confirmed bookings not yet flushed to room.times_booked")
+                .register(meterRegistry);
+    }
+
+    // Пересчёт выполняется раньше остальных обработчиков старта, в частности до построения рейтинга
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void replay() {
+        Integer rooms = transactionTemplate.execute(status -> roomRepository.recountTimesBooked());
+        cacheEvictor.evictAllRooms();
+        log.info("Booking counters replayed from counted confirmed locks: {} rooms", rooms);
+    }
+
+    // Приращение учитывается только после коммита подтверждения
+    public void add(Long roomId, long delta) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            counter(roomId).add(delta);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                counter(roomId).add(delta);
+            }
+        });
+    }
+
+    // Текущее значение: сохранённое в БД плюс ещё не сброшенные приращения. Под монитором сброса,
+    // чтобы приращение, переносимое в БД, не учлось дважды и не потерялось между двумя чтениями
+    public synchronized long current(Long roomId, ToLongFunction<Long> stored) {
+        LongAdder adder = pending.get(roomId);
+        return stored.applyAsLong(roomId) + (adder == null ? 0 : adder.sum());
+    }
+
+    @Scheduled(fixedDelayString = "${hotel.counters.flush-interval-ms:1000}")
+    @PreDestroy
+    public synchronized void flush() {
+        Map<Long, Long> local = new HashMap<>();
+        // sum + add(-sum), а не sumThenReset: конкурентные приращения не теряются
+        pending.forEach((roomId, adder) -> {
+            long delta = adder.sum();
+            if (delta != 0) {
+                adder.add(-delta);
+                local.put(roomId, delta);
+            }
+        });
+        try {
+            Map<Long, Long> deltas = transactionTemplate.execute(status -> {
+                Map<Long, Long> counted = lockRepository.markConfirmedCounted();
+                roomRepository.addTimesBooked(counted);
+                return counted;
+            });
+            if (deltas != null && !deltas.isEmpty()) {
+                // UPDATE прошёл через JDBC, кэш второго уровня о нём не знает
+                cacheEvictor.evictRooms(deltas.keySet());
+            }
+        } catch (RuntimeException e) {
+            // Строки остались неучтёнными, следующий сброс повторит попытку; локальная поправка возвращается
+            local.forEach((roomId, delta) -> counter(roomId).add(delta));
+            log.warn("Failed to flush booking counters", e);
+        }
+    }
+
+    private LongAdder counter(Long roomId) {
+        return pending.computeIfAbsent(roomId, id -> new LongAdder());
+    }
+
+    private double pendingTotal() {
+        return pending.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+}
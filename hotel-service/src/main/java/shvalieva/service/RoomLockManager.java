@@ -0,0 +1,127 @@
+package shvalieva.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Полосатые (striped) блокировки по roomId: операции над одним номером упорядочены,
+ * над разными номерами (в разных полосах) выполняются параллельно.
+ * Блокировка удерживается до завершения текущей транзакции, чтобы следующий запрос
+ * по тому же номеру увидел уже закоммиченный результат.
+ */
+@Component
+public class RoomLockManager {
+
+    private final ReentrantLock[] stripes;
+    private final long timeoutMs;
+    private final Timer waitTimer;
+    private final Counter contended;
+    private final Counter timeouts;
+
+    public RoomLockManager(MeterRegistry meterRegistry,
+                           @Value("${hotel.room-locks.stripes:64}") int stripeCount,
+                           @Value("${hotel.room-locks.timeout-ms:2000}") long timeoutMs) {
+        // Размер округляется до степени двойки, чтобы номер полосы считался маской
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            ReentrantLock lock = new ReentrantLock(true);
+            stripes[i] = lock;
+            Gauge.builder("hotel.room.locks.queue", lock, ReentrantLock::getQueueLength)
+                    .description("Threads waiting for a room lock stripe")
+                    .tag("stripe", String.valueOf(i))
+                    .register(meterRegistry);
+        }
+        this.timeoutMs = timeoutMs;
+        this.waitTimer = Timer.builder("hotel.room.locks.wait")
+                .description("Time spent waiting for a contended room lock stripe")
+                .register(meterRegistry);
+        this.contended = Counter.builder("hotel.room.locks.contended").register(meterRegistry);
+        this.timeouts = Counter.builder("hotel.room.locks.timeouts").register(meterRegistry);
+    }
+
+    /**
+     * Захватывает блокировку номера до конца текущей транзакции.
+     * Без активной транзакции блокировка отпускается сразу после захвата — упорядочивать нечего.
+     */
+    public void lockUntilCompletion(Long roomId) {
+        lockStripesUntilCompletion(new int[]{stripeIndex(roomId)});
+    }
+
+    /**
+     * То же для нескольких номеров. Полосы захватываются по возрастанию индекса,
+     * чтобы пакетные операции с пересекающимися наборами номеров не взаимоблокировались.
+     */
+    public void lockAllUntilCompletion(Collection<Long> roomIds) {
+        lockStripesUntilCompletion(roomIds.stream()
+                .mapToInt(this::stripeIndex)
+                .distinct()
+                .sorted()
+                .toArray());
+    }
+
+    private void lockStripesUntilCompletion(int[] indexes) {
+        List<ReentrantLock> acquired = new ArrayList<>(indexes.length);
+        try {
+            for (int index : indexes) {
+                ReentrantLock lock = stripes[index];
+                acquire(lock);
+                acquired.add(lock);
+            }
+        } catch (RuntimeException e) {
+            acquired.forEach(ReentrantLock::unlock);
+            throw e;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            acquired.forEach(ReentrantLock::unlock);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                acquired.forEach(ReentrantLock::unlock);
+            }
+        });
+    }
+
+    private int stripeIndex(Long roomId) {
+        int h = Long.hashCode(roomId);
+        h ^= (h >>> 16);
+        return h & (stripes.length - 1);
+    }
+
+    private void acquire(ReentrantLock lock) {
+        // Быстрый путь без ожидания: в большинстве случаев полоса свободна.
+        // При наличии очереди не обгоняем ожидающих, чтобы сохранить порядок
+        if (!lock.hasQueuedThreads() && lock.tryLock()) {
+            return;
+        }
+        contended.increment();
+        long started = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = lock.tryLock(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание блокировки номера прервано");
+        } finally {
+            waitTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+        if (!acquired) {
+            timeouts.increment();
+            throw new IllegalStateException("Номер занят параллельным запросом, повторите позже");
+        }
+    }
+}
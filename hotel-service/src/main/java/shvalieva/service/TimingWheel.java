@@ -0,0 +1,160 @@
+package shvalieva.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Иерархическое колесо таймеров (Varghese–Lauck): уровни по 64 слота, слот уровня k покрывает 64^k тиков.
+ * Постановка и отмена — O(1), продвижение на тик — O(1) плюс перенос слота старшего уровня,
+ * когда младший делает полный оборот. Сроки дальше последнего уровня ждут в отдельном списке.
+ * Время задаётся абстрактными тиками; потокобезопасность — через synchronized.
+ */
+public final class TimingWheel<K> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    private final int levels;
+    private final Node<K>[][] wheels;
+    private final Node<K> overflow = Node.sentinel();
+    private final Node<K> due = Node.sentinel();
+    private final Map<K, Node<K>> nodes = new HashMap<>();
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(int levels, long startTick) {
+        this.levels = levels;
+        this.wheels = new Node[levels][SLOTS];
+        for (Node<K>[] wheel : wheels) {
+            for (int i = 0; i < SLOTS; i++) {
+                wheel[i] = Node.sentinel();
+            }
+        }
+        this.currentTick = startTick;
+    }
+
+    // Повторная постановка ключа переносит срок
+    public synchronized void schedule(K key, long deadlineTick) {
+        cancel(key);
+        Node<K> node = new Node<>(key, deadlineTick);
+        nodes.put(key, node);
+        place(node);
+    }
+
+    public synchronized boolean cancel(K key) {
+        Node<K> node = nodes.remove(key);
+        if (node == null) {
+            return false;
+        }
+        node.unlink();
+        return true;
+    }
+
+    // Продвигает колесо до toTick включительно и возвращает ключи с наступившим сроком
+    public synchronized List<K> advance(long toTick) {
+        List<K> expired = new ArrayList<>();
+        drain(due, expired);
+        while (currentTick < toTick) {
+            currentTick++;
+            cascade();
+            drain(wheels[0][(int) (currentTick & SLOT_MASK)], expired);
+            drain(due, expired);
+        }
+        return expired;
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    public synchronized long currentTick() {
+        return currentTick;
+    }
+
+    private void place(Node<K> node) {
+        long delta = node.deadline - currentTick;
+        if (delta <= 0) {
+            node.linkBefore(due);
+            return;
+        }
+        for (int level = 0; level < levels; level++) {
+            if (delta < 1L << (SLOT_BITS * (level + 1))) {
+                int slot = (int) ((node.deadline >>> (SLOT_BITS * level)) & SLOT_MASK);
+                node.linkBefore(wheels[level][slot]);
+                return;
+            }
+        }
+        node.linkBefore(overflow);
+    }
+
+    // Когда младшие уровни завершают оборот, очередной слот старшего уровня раскладывается вниз
+    private void cascade() {
+        for (int level = 1; level < levels; level++) {
+            if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                return;
+            }
+            replace(wheels[level][(int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK)]);
+        }
+        replace(overflow);
+    }
+
+    // Список сначала отцепляется целиком: узел из overflow может вернуться в тот же список
+    private void replace(Node<K> head) {
+        List<Node<K>> moved = new ArrayList<>();
+        for (Node<K> node = head.next; node != head; node = node.next) {
+            moved.add(node);
+        }
+        for (Node<K> node : moved) {
+            node.unlink();
+            place(node);
+        }
+    }
+
+    private void drain(Node<K> head, List<K> expired) {
+        Node<K> node = head.next;
+        while (node != head) {
+            Node<K> next = node.next;
+            node.unlink();
+            if (node.deadline <= currentTick) {
+                nodes.remove(node.key);
+                expired.add(node.key);
+            } else {
+                place(node);
+            }
+            node = next;
+        }
+    }
+
+    // Узел двусвязного кольцевого списка слота; у пустого слота только страж
+    private static final class Node<K> {
+        final K key;
+        final long deadline;
+        Node<K> prev = this;
+        Node<K> next = this;
+
+        Node(K key, long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+
+        static <K> Node<K> sentinel() {
+            return new Node<>(null, Long.MIN_VALUE);
+        }
+
+        void linkBefore(Node<K> head) {
+            prev = head.prev;
+            next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+
+        void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = this;
+            next = this;
+        }
+    }
+}
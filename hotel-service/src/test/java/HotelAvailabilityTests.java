@@ -2,14 +2,32 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import shvalieva.dto.BatchHoldItem;
+import shvalieva.dto.BatchResult;
+import shvalieva.dto.RoomSummary;
 import shvalieva.entity.Hotel;
 import shvalieva.entity.Room;
 import shvalieva.entity.RoomReservationLock;
 import shvalieva.repository.HotelRepository;
+import shvalieva.repository.RoomRepository;
+import shvalieva.repository.RoomReservationLockRepository;
+import shvalieva.service.HoldExpiryReaper;
 import shvalieva.service.HotelService;
+import shvalieva.service.RoomAvailabilityIndex;
+import shvalieva.service.RoomBookingCounters;
+import shvalieva.service.TimingWheel;
 
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @SpringBootTest(classes = shvalieva.HotelServiceApplication.class)
 public class HotelAvailabilityTests {
@@ -20,6 +38,24 @@ public class HotelAvailabilityTests {
     @Autowired
     private HotelService hotelService;
 
+    @Autowired
+    private RoomBookingCounters bookingCounters;
+
+    @Autowired
+    private RoomReservationLockRepository lockRepository;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private HoldExpiryReaper holdExpiry;
+
+    @Autowired
+    private RoomAvailabilityIndex availabilityIndex;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     @Test
     @Transactional
     void holdConfirmRelease_idempotentFlow() {
@@ -51,4 +87,303 @@ public class HotelAvailabilityTests {
         RoomReservationLock afterRelease = hotelService.releaseHold(req);
         Assertions.assertEquals(RoomReservationLock.Status.CONFIRMED, afterRelease.getStatus());
     }
-}
\ No newline at end of file
+
+    @Test
+    void concurrentHoldsOnSameRoom_onlyOneWins() throws Exception {
+        Hotel h = new Hotel();
+        h.setName("H");
+        h.setCity("C");
+        h = hotelRepository.save(h);
+        Room r = new Room();
+        r.setHotel(h);
+        r.setNumber("301");
+        r.setCapacity(2);
+        Room room = hotelService.saveRoom(r);
+
+        LocalDate s = LocalDate.now().plusDays(30);
+        LocalDate e = s.plusDays(2);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String req = "race-" + i;
+                results.add(pool.submit(() -> {
+                    try {
+                        hotelService.holdRoom(req, room.getId(), s, e);
+                        return true;
+                    } catch (IllegalStateException ex) {
+                        return false;
+                    }
+                }));
+            }
+            int won = 0;
+            for (Future<Boolean> f : results) {
+                if (f.get()) {
+                    won++;
+                }
+            }
+            // параллельные удержания одного номера на пересекающиеся даты не задваиваются
+            Assertions.assertEquals(1, won);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @Transactional
+    void batchHold_allOrNothing() {
+        Hotel h = new Hotel();
+        h.setName("H");
+        h.setCity("C");
+        h = hotelRepository.save(h);
+        Room r1 = new Room();
+        r1.setHotel(h);
+        r1.setNumber("401");
+        r1 = hotelService.saveRoom(r1);
+        Room r2 = new Room();
+        r2.setHotel(h);
+        r2.setNumber("402");
+        r2 = hotelService.saveRoom(r2);
+
+        LocalDate s = LocalDate.now().plusDays(60);
+        LocalDate e = s.plusDays(2);
+        BatchResult held = hotelService.holdRooms(List.of(
+                new BatchHoldItem(r1.getId(), "grp-1", s, e),
+                new BatchHoldItem(r2.getId(), "grp-2", s, e)
+        ));
+        Assertions.assertTrue(held.applied());
+        Assertions.assertTrue(held.items().stream().allMatch(i -> i.lockId() != null));
+
+        // второй пакет пересекается по r1 — не применяется ни один элемент
+        BatchResult rejected = hotelService.holdRooms(List.of(
+                new BatchHoldItem(r2.getId(), "grp-3", e.plusDays(5), e.plusDays(6)),
+                new BatchHoldItem(r1.getId(), "grp-4", s.plusDays(1), e.plusDays(1))
+        ));
+        Assertions.assertFalse(rejected.applied());
+        Assertions.assertNotNull(rejected.items().get(1).error());
+        Assertions.assertThrows(IllegalStateException.class, () -> hotelService.confirmHold("grp-3"));
+
+        // некорректные элементы отклоняют пакет целиком, а не дают 500
+        BatchResult invalid = hotelService.holdRooms(List.of(
+                new BatchHoldItem(r2.getId(), "grp-5", e.plusDays(5), e.plusDays(6)),
+                new BatchHoldItem(null, "grp-6", s, e),
+                new BatchHoldItem(r2.getId(), "grp-7", e.plusDays(9), e.plusDays(8))
+        ));
+        Assertions.assertFalse(invalid.applied());
+        Assertions.assertNull(invalid.items().get(0).error());
+        Assertions.assertNotNull(invalid.items().get(1).error());
+        Assertions.assertNotNull(invalid.items().get(2).error());
+        Assertions.assertThrows(IllegalStateException.class, () -> hotelService.confirmHold("grp-5"));
+
+        BatchResult confirmed = hotelService.confirmHolds(List.of("grp-1", "grp-2"));
+        Assertions.assertTrue(confirmed.applied());
+        Long r1Id = r1.getId();
+        Assertions.assertEquals(1, hotelService.popularRooms().stream()
+                .filter(p -> p.id().equals(r1Id)).findFirst().orElseThrow().timesBooked());
+        Assertions.assertEquals(RoomReservationLock.Status.CONFIRMED, hotelService.releaseHold("grp-2").getStatus());
+    }
+
+    @Test
+    void bookingCounters_flushAndReplay() {
+        Hotel h = new Hotel();
+        h.setName("H");
+        h.setCity("C");
+        h = hotelRepository.save(h);
+        Room r = new Room();
+        r.setHotel(h);
+        r.setNumber("501");
+        r = hotelService.saveRoom(r);
+
+        LocalDate s = LocalDate.now().plusDays(100);
+        hotelService.holdRoom("cnt-1", r.getId(), s, s.plusDays(1));
+        hotelService.holdRoom("cnt-2", r.getId(), s.plusDays(3), s.plusDays(4));
+        hotelService.confirmHold("cnt-1");
+        hotelService.confirmHold("cnt-2");
+        bookingCounters.flush();
+        Assertions.assertEquals(2, hotelService.getRoom(r.getId()).orElseThrow().getTimesBooked());
+
+        // значение из тела запроса счётчик не меняет
+        r = hotelService.getRoom(r.getId()).orElseThrow();
+        r.setTimesBooked(0);
+        hotelService.saveRoom(r);
+        Assertions.assertEquals(2, hotelService.getRoom(r.getId()).orElseThrow().getTimesBooked());
+
+        // несброшенное значение восстанавливается по подтверждённым удержаниям
+        roomRepository.addTimesBooked(Map.of(r.getId(), -2L));
+        bookingCounters.replay();
+        Assertions.assertEquals(2, hotelService.getRoom(r.getId()).orElseThrow().getTimesBooked());
+
+        // пересчёт при старте другого экземпляра не учитывает ещё не сброшенное подтверждение,
+        // и сброс добавляет его ровно один раз
+        hotelService.holdRoom("cnt-3", r.getId(), s.plusDays(6), s.plusDays(7));
+        hotelService.confirmHold("cnt-3");
+        bookingCounters.replay();
+        Assertions.assertEquals(2, hotelService.getRoom(r.getId()).orElseThrow().getTimesBooked());
+        bookingCounters.flush();
+        bookingCounters.flush();
+        Assertions.assertEquals(3, hotelService.getRoom(r.getId()).orElseThrow().getTimesBooked());
+    }
+
+    @Test
+    @Transactional
+    void availabilitySearch_byCityCapacityAndDates() {
+        Hotel h = new Hotel();
+        h.setName("H");
+        h.setCity("SearchCity");
+        h = hotelRepository.save(h);
+        Room small = new Room();
+        small.setHotel(h);
+        small.setNumber("601");
+        small.setCapacity(2);
+        small = hotelService.saveRoom(small);
+        Room large = new Room();
+        large.setHotel(h);
+        large.setNumber("602");
+        large.setCapacity(4);
+        large = hotelService.saveRoom(large);
+
+        LocalDate s = LocalDate.now().plusDays(10);
+        LocalDate e = s.plusDays(3);
+        hotelService.holdRoom("av-1", small.getId(), s, e);
+        // за пределами окна календаря проверка идёт по интервалам
+        LocalDate far = LocalDate.now().plusDays(1000);
+        hotelService.holdRoom("av-2", large.getId(), far, far.plusDays(1));
+
+        Assertions.assertEquals(List.of(large.getId()), ids(hotelService.searchAvailable("SearchCity", 2, s.plusDays(1), e, 100)));
+        Assertions.assertEquals(List.of(small.getId(), large.getId()),
+                ids(hotelService.searchAvailable("SearchCity", 2, e.plusDays(1), e.plusDays(5), 100)));
+        Assertions.assertEquals(List.of(large.getId()), ids(hotelService.searchAvailable("SearchCity", 3, e.plusDays(1), e.plusDays(5), 100)));
+        Assertions.assertEquals(List.of(small.getId()), ids(hotelService.searchAvailable("SearchCity", 2, far, far, 100)));
+        Assertions.assertTrue(hotelService.searchAvailable("OtherCity", 1, s, e, 100).isEmpty());
+    }
+
+    private static List<Long> ids(List<RoomSummary> rooms) {
+        return rooms.stream().map(RoomSummary::id).toList();
+    }
+
+    @Test
+    void timingWheel_firesOnDeadlineAcrossLevels() {
+        TimingWheel<String> wheel = new TimingWheel<>(3, 0);
+        wheel.schedule("l0", 5);
+        wheel.schedule("cancelled", 7);
+        wheel.schedule("l1", 100);
+        wheel.schedule("l2", 5000);
+        // дальше трёх уровней (64^3 тиков) — через список переполнения
+        wheel.schedule("overflow", 300_000);
+        wheel.schedule("past", -1);
+        Assertions.assertTrue(wheel.cancel("cancelled"));
+
+        Assertions.assertEquals(List.of("past"), wheel.advance(4));
+        Assertions.assertEquals(List.of("l0"), wheel.advance(5));
+        Assertions.assertEquals(List.of(), wheel.advance(99));
+        Assertions.assertEquals(List.of("l1"), wheel.advance(100));
+        Assertions.assertEquals(List.of(), wheel.advance(4999));
+        Assertions.assertEquals(List.of("l2"), wheel.advance(5000));
+        Assertions.assertEquals(List.of(), wheel.advance(299_999));
+        Assertions.assertEquals(List.of("overflow"), wheel.advance(300_000));
+        Assertions.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void expiredHold_ignoredByConflictCheckAndReaped() {
+        Hotel h = new Hotel();
+        h.setName("H");
+        h.setCity("C");
+        h = hotelRepository.save(h);
+        Room r = new Room();
+        r.setHotel(h);
+        r.setNumber("601");
+        r.setCapacity(2);
+        r = hotelService.saveRoom(r);
+        LocalDate s = LocalDate.now().plusDays(40);
+
+        RoomReservationLock abandoned = hotelService.holdRoom("ttl-1", r.getId(), s, s.plusDays(2));
+        Assertions.assertNotNull(abandoned.getExpiresAt());
+        final Long roomId = r.getId();
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> hotelService.holdRoom("ttl-2", roomId, s, s.plusDays(1)));
+
+        // Срок истёк, но задача ещё не сработала: даты уже свободны, подтвердить старое удержание нельзя
+        abandoned.setExpiresAt(Instant.now().minusSeconds(1));
+        abandoned = lockRepository.save(abandoned);
+        RoomReservationLock next = hotelService.holdRoom("ttl-3", roomId, s, s.plusDays(1));
+        Assertions.assertEquals(RoomReservationLock.Status.HELD, next.getStatus());
+        Assertions.assertThrows(IllegalStateException.class, () -> hotelService.confirmHold("ttl-1"));
+
+        holdExpiry.schedule(abandoned);
+        holdExpiry.reap();
+        Assertions.assertEquals(RoomReservationLock.Status.RELEASED,
+                lockRepository.findByRequestId("ttl-1").orElseThrow().getStatus());
+        Assertions.assertEquals(RoomReservationLock.Status.RELEASED,
+                hotelService.releaseHold("ttl-3").getStatus());
+    }
+
+    @Test
+    void indexRewarm_keepsHoldCommittedDuringWarmUp() throws Exception {
+        Hotel h = new Hotel();
+        h.setName("H");
+        h.setCity("C");
+        h = hotelRepository.save(h);
+        Room r = new Room();
+        r.setHotel(h);
+        r.setNumber("602");
+        r.setCapacity(2);
+        Long roomId = hotelService.saveRoom(r).getId();
+        LocalDate s = LocalDate.now().plusDays(50);
+
+        // Прогрев идёт параллельно с открытой транзакцией удержания: строка в выборку не попадает,
+        // но после подмены карты удержание в индексе остаётся
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                hotelService.holdRoom("warm-1", roomId, s, s.plusDays(2));
+                try {
+                    pool.submit(availabilityIndex::warmUp).get();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+        Assertions.assertTrue(availabilityIndex.isWarmedUp());
+        Assertions.assertTrue(availabilityIndex.mayConflict(roomId, s.plusDays(1), s.plusDays(1)));
+        Assertions.assertFalse(availabilityIndex.mayConflict(roomId, s.plusDays(3), s.plusDays(4)));
+        hotelService.releaseHold("warm-1");
+        Assertions.assertFalse(availabilityIndex.mayConflict(roomId, s, s.plusDays(2)));
+    }
+
+    @Test
+    void index_ignoresExpiredUnreapedHolds() {
+        Hotel h = new Hotel();
+        h.setName("H");
+        h.setCity("IdxCity");
+        h = hotelRepository.save(h);
+        Room r = new Room();
+        r.setHotel(h);
+        r.setNumber("603");
+        r.setCapacity(2);
+        Long roomId = hotelService.saveRoom(r).getId();
+        LocalDate s = LocalDate.now().plusDays(55);
+
+        // Удержание истекло, задача снятия ещё не сработала: ни интервалы, ни календарь номер не скрывают
+        RoomReservationLock stale = new RoomReservationLock();
+        stale.setRequestId("idx-1");
+        stale.setRoomId(roomId);
+        stale.setStartDate(s);
+        stale.setEndDate(s.plusDays(2));
+        stale.setStatus(RoomReservationLock.Status.HELD);
+        stale.setExpiresAt(Instant.now().minusSeconds(1));
+        availabilityIndex.onHeld(stale);
+        Assertions.assertFalse(availabilityIndex.mayConflict(roomId, s, s.plusDays(1)));
+        Assertions.assertFalse(availabilityIndex.mayConflict(roomId, s.plusDays(1000), s.plusDays(1001)));
+        Assertions.assertEquals(1, hotelService.searchAvailable("IdxCity", 2, s, s.plusDays(1), 10).size());
+
+        // Подтверждение снимает срок — интервал снова занят
+        availabilityIndex.onConfirmed(stale);
+        Assertions.assertTrue(availabilityIndex.mayConflict(roomId, s, s.plusDays(1)));
+        Assertions.assertTrue(hotelService.searchAvailable("IdxCity", 2, s, s.plusDays(1), 10).isEmpty());
+        availabilityIndex.onReleased(stale);
+        Assertions.assertFalse(availabilityIndex.mayConflict(roomId, s, s.plusDays(1)));
+    }
+}
@@ -1,16 +1,34 @@
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.transaction.annotation.Transactional;
+import shvalieva.dto.HotelView;
+import shvalieva.dto.PopularRoom;
+import shvalieva.dto.RoomPage;
+import shvalieva.dto.RoomSort;
+import shvalieva.dto.RoomSummary;
 import shvalieva.entity.Hotel;
 import shvalieva.entity.Room;
 import shvalieva.entity.RoomReservationLock;
+import shvalieva.outbox.InMemoryOutboxSink;
+import shvalieva.outbox.OutboxEvent;
+import shvalieva.outbox.OutboxEventRepository;
+import shvalieva.outbox.OutboxRelay;
 import shvalieva.repository.HotelRepository;
+import shvalieva.repository.RoomRepository;
+import shvalieva.repository.RoomReservationLockRepository;
 import shvalieva.service.HotelService;
+import shvalieva.service.LockArchiver;
+import shvalieva.service.RoomBookingCounters;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @SpringBootTest(classes = shvalieva.HotelServiceApplication.class)
 public class HotelMoreTests {
@@ -21,6 +39,30 @@ public class HotelMoreTests {
     @Autowired
     private HotelService hotelService;
 
+    @Autowired
+    private RoomBookingCounters bookingCounters;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private RoomReservationLockRepository lockRepository;
+
+    @Autowired
+    private LockArchiver lockArchiver;
+
+    @Autowired
+    private OutboxEventRepository outboxRepository;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private InMemoryOutboxSink outboxSink;
+
     @Test
     @Transactional
     void dateConflictReturns409LikeBehavior() {
@@ -94,10 +136,327 @@ public class HotelMoreTests {
         hotelService.holdRoom("req-f", r2.getId(), LocalDate.now(), LocalDate.now().plusDays(1));
         hotelService.confirmHold("req-f");
 
-        List<Room> popular = hotelService.popularRooms();
+        // Рейтинг общий для всех тестов контекста: проверяется взаимный порядок своих номеров
+        List<Long> popular = hotelService.popularRooms().stream().map(PopularRoom::id).toList();
+        int first = popular.indexOf(r1.getId());
+        int second = popular.indexOf(r2.getId());
+
+        Assertions.assertTrue(first >= 0 && first < second);
+
+        // постраничная выдача из того же рейтинга
+        Assertions.assertEquals(r2.getId(), hotelService.popularRooms(second, 1).get(0).id());
+    }
+
+    @Test
+    @Transactional
+    void releasedHoldFreesDates() {
+        Hotel h = new Hotel();
+        h.setName("H");
+        h.setCity("C");
+        h = hotelRepository.save(h);
+        Room r = new Room();
+        r.setHotel(h);
+        r.setNumber("103");
+        r.setCapacity(2);
+        r = hotelService.saveRoom(r);
+
+        LocalDate s1 = LocalDate.now();
+        LocalDate e1 = s1.plusDays(2);
+        hotelService.holdRoom("req-g", r.getId(), s1, e1);
+        hotelService.releaseHold("req-g");
+
+        // после освобождения те же даты снова доступны
+        RoomReservationLock lock = hotelService.holdRoom("req-h", r.getId(), s1, e1);
+        Assertions.assertEquals(RoomReservationLock.Status.HELD, lock.getStatus());
+
+        // непересекающийся интервал после занятого тоже свободен
+        RoomReservationLock next = hotelService.holdRoom("req-i", r.getId(), e1.plusDays(1), e1.plusDays(3));
+        Assertions.assertEquals(RoomReservationLock.Status.HELD, next.getStatus());
+    }
+
+    @Test
+    @Transactional
+    void roomsKeysetPaginationMatchesStream() {
+        Hotel h = new Hotel();
+        h.setName("H");
+        h.setCity("C");
+        h = hotelRepository.save(h);
+        long[] timesBooked = {3, 1, 3, 0, 2};
+        for (int i = 0; i < timesBooked.length; i++) {
+            Room r = new Room();
+            r.setHotel(h);
+            r.setNumber("30" + i);
+            // timesBooked пишут только счётчики бронирований
+            roomRepository.addTimesBooked(Map.of(hotelService.saveRoom(r).getId(), timesBooked[i]));
+        }
 
-        Assertions.assertEquals(r1.getId(), popular.get(0).getId());
-        Assertions.assertEquals(r2.getId(), popular.get(1).getId());
+        List<RoomSummary> streamed = new ArrayList<>();
+        hotelService.streamRooms(RoomSort.TIMES_BOOKED, true, streamed::add);
+
+        // страницы по 2 в сумме дают тот же порядок, что и потоковая выдача
+        List<RoomSummary> paged = new ArrayList<>();
+        String after = null;
+        do {
+            RoomPage page = hotelService.listRooms(RoomSort.TIMES_BOOKED, true, after, 2);
+            Assertions.assertTrue(page.items().size() <= 2);
+            paged.addAll(page.items());
+            after = page.next();
+        } while (after != null);
+
+        Assertions.assertEquals(streamed, paged);
+        Long hotelId = h.getId();
+        Assertions.assertEquals(5, paged.stream().filter(r -> r.hotelId().equals(hotelId)).count());
+        for (int i = 1; i < paged.size(); i++) {
+            RoomSummary prev = paged.get(i - 1);
+            RoomSummary cur = paged.get(i);
+            Assertions.assertTrue(prev.timesBooked() > cur.timesBooked()
+                    || (prev.timesBooked() == cur.timesBooked() && prev.id() < cur.id()));
+        }
     }
 
-}
\ No newline at end of file
+    @Test
+    void etagsChangeOnlyWithData() {
+        Hotel h = new Hotel();
+        h.setName("E");
+        h.setCity("Etag");
+        h = hotelRepository.save(h);
+        Room r = new Room();
+        r.setHotel(h);
+        r.setNumber("301");
+        r.setCapacity(2);
+        r = hotelService.saveRoom(r);
+        Long hotelId = h.getId();
+
+        String hotelEtag = hotelService.hotelEtag(hotelId).orElseThrow();
+        String roomEtag = hotelService.roomEtag(r.getId()).orElseThrow();
+        String roomsEtag = hotelService.roomsEtag();
+        Assertions.assertEquals(hotelEtag, hotelService.hotelEtag(hotelId).orElseThrow());
+        Assertions.assertEquals(roomsEtag, hotelService.roomsEtag());
+
+        // Перезапись номера без версии в теле (как PUT администратора) проходит и меняет ETag
+        Room update = new Room();
+        update.setId(r.getId());
+        update.setHotel(h);
+        update.setNumber("301a");
+        update.setCapacity(3);
+        hotelService.saveRoom(update);
+        Assertions.assertNotEquals(roomEtag, hotelService.roomEtag(r.getId()).orElseThrow());
+        Assertions.assertNotEquals(hotelEtag, hotelService.hotelEtag(hotelId).orElseThrow());
+        Assertions.assertNotEquals(roomsEtag, hotelService.roomsEtag());
+
+        Assertions.assertTrue(hotelService.roomEtag(Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    void secondLevelCacheServesReadsAndIsEvicted() {
+        Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Hotel h = new Hotel();
+        h.setName("L2");
+        h.setCity("Cache");
+        h = hotelService.saveHotel(h);
+        Room r = new Room();
+        r.setHotel(h);
+        r.setNumber("401");
+        r.setCapacity(2);
+        Long roomId = hotelService.saveRoom(r).getId();
+
+        hotelService.getRoom(roomId);
+        long hits = stats.getSecondLevelCacheHitCount();
+        Assertions.assertEquals(2, hotelService.getRoom(roomId).orElseThrow().getCapacity());
+        Assertions.assertTrue(stats.getSecondLevelCacheHitCount() > hits);
+
+        // Изменение администратором видно сразу
+        Room update = new Room();
+        update.setId(roomId);
+        update.setHotel(h);
+        update.setNumber("401");
+        update.setCapacity(4);
+        hotelService.saveRoom(update);
+        Assertions.assertEquals(4, hotelService.getRoom(roomId).orElseThrow().getCapacity());
+
+        // Счётчик записывается через JDBC, закэшированный номер после сброса вытесняется
+        LocalDate start = LocalDate.now().plusDays(30);
+        hotelService.holdRoom("l2-hold", roomId, start, start.plusDays(1));
+        hotelService.confirmHold("l2-hold");
+        bookingCounters.flush();
+        Assertions.assertEquals(1, hotelService.getRoom(roomId).orElseThrow().getTimesBooked());
+    }
+
+    @Test
+    void hotelListingCostsFixedStatementCount() {
+        for (int i = 0; i < 3; i++) {
+            Hotel h = new Hotel();
+            h.setName("N" + i);
+            h.setCity("NPlusOne");
+            for (int j = 0; j < 2; j++) {
+                Room r = new Room();
+                r.setHotel(h);
+                r.setNumber(i + "0" + j);
+                r.setCapacity(2);
+                h.getRooms().add(r);
+            }
+            hotelService.saveHotel(h);
+        }
+        bookingCounters.flush();
+        Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        // Холодный кэш: один запрос на весь каталог независимо от числа отелей
+        entityManagerFactory.getCache().evictAll();
+        stats.clear();
+        List<HotelView> hotels = hotelService.listHotelViews();
+        Assertions.assertEquals(1, stats.getPrepareStatementCount());
+        Assertions.assertEquals(3, hotels.stream().filter(h -> "NPlusOne".equals(h.city()))
+                .filter(h -> h.rooms().size() == 2).count());
+
+        // Повторное чтение — из кэша запросов и сущностей
+        stats.clear();
+        Assertions.assertEquals(hotels, hotelService.listHotelViews());
+        Assertions.assertEquals(0, stats.getPrepareStatementCount());
+
+        entityManagerFactory.getCache().evictAll();
+        stats.clear();
+        HotelView one = hotelService.getHotelView(hotels.get(0).id()).orElseThrow();
+        Assertions.assertEquals(hotels.get(0), one);
+        Assertions.assertEquals(1, stats.getPrepareStatementCount());
+    }
+
+    @Test
+    @Transactional
+    void releasedAndPastLocksAreArchived() {
+        Hotel h = new Hotel();
+        h.setName("H");
+        h.setCity("C");
+        h = hotelRepository.save(h);
+        Room r = new Room();
+        r.setHotel(h);
+        r.setNumber("701");
+        r.setCapacity(2);
+        Long roomId = hotelService.saveRoom(r).getId();
+
+        LocalDate future = LocalDate.now().plusDays(60);
+        LocalDate past = LocalDate.now().minusDays(10);
+        hotelService.holdRoom("arc-released", roomId, future, future.plusDays(1));
+        hotelService.releaseHold("arc-released");
+        hotelService.holdRoom("arc-past", roomId, past, past.plusDays(2));
+        hotelService.confirmHold("arc-past");
+        hotelService.holdRoom("arc-active", roomId, future.plusDays(5), future.plusDays(6));
+
+        Assertions.assertTrue(lockArchiver.archive() >= 2);
+        Assertions.assertTrue(lockRepository.findByRequestId("arc-released").isEmpty());
+        Assertions.assertTrue(lockRepository.findByRequestId("arc-past").isEmpty());
+        Assertions.assertTrue(lockRepository.findByRequestId("arc-active").isPresent());
+
+        // Повторы по requestId отвечают по архиву, а не создают новое удержание
+        Assertions.assertEquals(RoomReservationLock.Status.RELEASED,
+                hotelService.holdRoom("arc-released", roomId, future, future.plusDays(1)).getStatus());
+        Assertions.assertEquals(RoomReservationLock.Status.CONFIRMED, hotelService.confirmHold("arc-past").getStatus());
+        Assertions.assertThrows(IllegalStateException.class, () -> hotelService.confirmHold("arc-released"));
+        // Архивная запись — только для чтения: смена статуса отклоняется, снятие ничего не меняет
+        Assertions.assertTrue(hotelService.releaseHold("arc-past").isArchived());
+        Assertions.assertEquals(RoomReservationLock.Status.CONFIRMED, hotelService.confirmHold("arc-past").getStatus());
+        Assertions.assertFalse(hotelService.confirmHolds(List.of("arc-released")).applied());
+        Assertions.assertTrue(lockRepository.findByRequestId("arc-past").isEmpty());
+
+        // Пересчёт timesBooked учитывает подтверждения из архива
+        bookingCounters.replay();
+        RoomSummary recounted = hotelService.listRooms(RoomSort.ID, false, String.valueOf(roomId - 1), 1).items().get(0);
+        Assertions.assertEquals(1, recounted.timesBooked());
+    }
+
+    @Test
+    void lockStatusChangesAreRelayedThroughOutbox() {
+        Hotel h = new Hotel();
+        h.setName("H");
+        h.setCity("C");
+        h = hotelRepository.save(h);
+        Room r = new Room();
+        r.setHotel(h);
+        r.setNumber("801");
+        r.setCapacity(2);
+        Long roomId = hotelService.saveRoom(r).getId();
+
+        LocalDate start = LocalDate.now().plusDays(90);
+        Long lockId = hotelService.holdRoom("ob-1", roomId, start, start.plusDays(1)).getId();
+        hotelService.releaseHold("ob-1");
+        // Конфликт откатывает транзакцию — события нет
+        hotelService.holdRoom("ob-2", roomId, start, start.plusDays(2));
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> hotelService.holdRoom("ob-3", roomId, start.plusDays(1), start.plusDays(3)));
+
+        outboxRelay.drain();
+        Assertions.assertEquals(0, outboxRepository.count());
+        List<String> events = outboxSink.recent().stream()
+                .filter(e -> e.getAggregateId().equals(String.valueOf(lockId)))
+                .map(OutboxEvent::getEventType)
+                .toList();
+        Assertions.assertEquals(List.of("HELD", "RELEASED"), events);
+        Assertions.assertTrue(outboxSink.recent().stream()
+                .noneMatch(e -> e.getPayload().contains("\"ob-3\"")));
+        hotelService.releaseHold("ob-2");
+    }
+
+    @Test
+    void staleHoldCannotOverwriteRelease() {
+        Hotel h = new Hotel();
+        h.setName("H");
+        h.setCity("C");
+        h = hotelRepository.save(h);
+        Room r = new Room();
+        r.setHotel(h);
+        r.setNumber("802");
+        r.setCapacity(2);
+        Long roomId = hotelService.saveRoom(r).getId();
+
+        LocalDate start = LocalDate.now().plusDays(95);
+        hotelService.holdRoom("ver-1", roomId, start, start.plusDays(1));
+        // Копия, прочитанная до снятия удержания
+        RoomReservationLock stale = lockRepository.findByRequestId("ver-1").orElseThrow();
+        hotelService.releaseHold("ver-1");
+
+        Assertions.assertThrows(IllegalStateException.class, () -> hotelService.confirmHold("ver-1"));
+        stale.setStatus(RoomReservationLock.Status.CONFIRMED);
+        Assertions.assertThrows(org.springframework.dao.OptimisticLockingFailureException.class,
+                () -> lockRepository.save(stale));
+        Assertions.assertEquals(RoomReservationLock.Status.RELEASED,
+                lockRepository.findByRequestId("ver-1").orElseThrow().getStatus());
+        // Даты свободны: двойного бронирования нет
+        hotelService.holdRoom("ver-2", roomId, start, start.plusDays(1));
+        hotelService.releaseHold("ver-2");
+    }
+
+    @Test
+    void saveRoomKeepsStoredTimesBookedAndPendingInLeaderboard() {
+        Hotel h = new Hotel();
+        h.setName("H");
+        h.setCity("C");
+        h = hotelRepository.save(h);
+        Room r = new Room();
+        r.setHotel(h);
+        r.setNumber("803");
+        r.setCapacity(2);
+        r.setTimesBooked(50);
+        Room created = hotelService.saveRoom(r);
+        Assertions.assertEquals(0, created.getTimesBooked());
+        Long roomId = created.getId();
+
+        LocalDate start = LocalDate.now().plusDays(100);
+        hotelService.holdRoom("tb-1", roomId, start, start.plusDays(1));
+        hotelService.confirmHold("tb-1");
+
+        // Тело запроса с завышенным счётчиком: хранимое значение не меняется, в рейтинге — с несброшенным приращением
+        Room update = new Room();
+        update.setId(roomId);
+        update.setHotel(h);
+        update.setNumber("803a");
+        update.setCapacity(3);
+        update.setTimesBooked(100);
+        hotelService.saveRoom(update);
+        PopularRoom ranked = hotelService.popularRooms().stream()
+                .filter(p -> p.id().equals(roomId)).findFirst().orElseThrow();
+        Assertions.assertEquals(1, ranked.timesBooked());
+        Assertions.assertEquals("803a", ranked.number());
+        bookingCounters.flush();
+        Assertions.assertEquals(1, roomRepository.findTimesBookedById(roomId).orElseThrow());
+        hotelService.releaseHold("tb-1");
+    }
+}
@@ -0,0 +1,47 @@
+package shvalieva.outbox;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Встроенный приёмник для локального запуска и тестов: события уходят подписчикам внутри процесса
+ * (@EventListener на OutboxEvent), последние outbox.in-memory.capacity хранятся для просмотра.
+ */
+@Component
+@ConditionalOnProperty(name = "outbox.sink", havingValue = "in-memory", matchIfMissing = true)
+public class InMemoryOutboxSink implements OutboxSink {
+    private final ApplicationEventPublisher events;
+    private final int capacity;
+    private final Deque<OutboxEvent> recent = new ArrayDeque<>();
+
+    public InMemoryOutboxSink(ApplicationEventPublisher events,
+                              @Value("${outbox.in-memory.capacity:1000}") int capacity) {
+        this.events = events;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void publish(List<OutboxEvent> batch) {
+        for (OutboxEvent event : batch) {
+            events.publishEvent(event);
+            remember(event);
+        }
+    }
+
+    public synchronized List<OutboxEvent> recent() {
+        return List.copyOf(recent);
+    }
+
+    private synchronized void remember(OutboxEvent event) {
+        recent.addLast(event);
+        if (recent.size() > capacity) {
+            recent.removeFirst();
+        }
+    }
+}
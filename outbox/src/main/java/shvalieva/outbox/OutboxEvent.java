@@ -0,0 +1,40 @@
+package shvalieva.outbox;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * Запись transactional outbox: событие изменения статуса, сохранённое в той же транзакции, что и само изменение.
+ * Ретранслятор читает таблицу по возрастанию id и удаляет записи после передачи в приёмник.
+ */
+@Entity
+@Table(name = "outbox_event")
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String aggregateType;
+
+    private String aggregateId;
+
+    private String eventType;
+
+    @Column(length = 4000)
+    private String payload;
+
+    private Instant createdAt;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getAggregateType() { return aggregateType; }
+    public void setAggregateType(String aggregateType) { this.aggregateType = aggregateType; }
+    public String getAggregateId() { return aggregateId; }
+    public void setAggregateId(String aggregateId) { this.aggregateId = aggregateId; }
+    public String getEventType() { return eventType; }
+    public void setEventType(String eventType) { this.eventType = eventType; }
+    public String getPayload() { return payload; }
+    public void setPayload(String payload) { this.payload = payload; }
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+}
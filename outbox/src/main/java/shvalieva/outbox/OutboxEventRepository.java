@@ -0,0 +1,13 @@
+package shvalieva.outbox;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    // Очередной пакет в порядке записи
+    @Query("select e from OutboxEvent e order by e.id")
+    List<OutboxEvent> findBatch(Pageable page);
+}
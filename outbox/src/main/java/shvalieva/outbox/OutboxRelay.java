@@ -0,0 +1,100 @@
+package shvalieva.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Ретранслятор outbox: пакетами по batch-size передаёт записи в приёмник и удаляет их в той же транзакции.
+ * Если приёмник упал, пакет остаётся и будет передан повторно — потребители должны быть идемпотентны
+ * (id записи монотонен и подходит для отсечения дублей).
+ * В БД ретранслятор идёт, только если после коммита есть новые записи; полный проход раз в sweep-interval
+ * подбирает записи, оставшиеся от упавшего экземпляра или прошлого запуска.
+ */
+@Component
+public class OutboxRelay {
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxEventRepository outboxRepository;
+    private final OutboxSink sink;
+    private final OutboxWriter writer;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long sweepIntervalNanos;
+    private long lastSweep = Long.MIN_VALUE;
+    private final Counter published;
+    private final Counter failures;
+
+    public OutboxRelay(OutboxEventRepository outboxRepository,
+                       OutboxSink sink,
+                       OutboxWriter writer,
+                       PlatformTransactionManager transactionManager,
+                       MeterRegistry meterRegistry,
+                       @Value("${outbox.relay.batch-size:500}") int batchSize,
+                       @Value("${outbox.relay.sweep-interval-ms:60000}") long sweepIntervalMs) {
+        this.outboxRepository = outboxRepository;
+        this.sink = sink;
+        this.writer = writer;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.sweepIntervalNanos = sweepIntervalMs * 1_000_000;
+        this.published = Counter.builder("outbox.published")
+                .description("Outbox events handed to the sink")
+                .register(meterRegistry);
+        this.failures = Counter.builder("outbox.failures")
+                .description("Outbox batches rejected by the sink")
+                .register(meterRegistry);
+    }
+
+    // Первый вызов — полный проход
+    @Scheduled(fixedDelayString = "${outbox.relay.interval-ms:500}")
+    public synchronized void poll() {
+        long now = System.nanoTime();
+        boolean sweepDue = lastSweep == Long.MIN_VALUE || now - lastSweep >= sweepIntervalNanos;
+        if (writer.takePending() || sweepDue) {
+            if (sweepDue) {
+                lastSweep = now;
+            }
+            drain();
+        }
+    }
+
+    public synchronized int drain() {
+        int total = 0;
+        while (true) {
+            Integer relayed;
+            try {
+                relayed = transactionTemplate.execute(status -> relayBatch());
+            } catch (RuntimeException e) {
+                failures.increment();
+                writer.markPending();
+                log.warn("Outbox relay failed, {} events relayed before the failure", total, e);
+                return total;
+            }
+            total += relayed;
+            if (relayed < batchSize) {
+                return total;
+            }
+        }
+    }
+
+    private int relayBatch() {
+        List<OutboxEvent> batch = outboxRepository.findBatch(PageRequest.of(0, batchSize));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        sink.publish(batch);
+        outboxRepository.deleteAllByIdInBatch(batch.stream().map(OutboxEvent::getId).toList());
+        published.increment(batch.size());
+        return batch.size();
+    }
+}
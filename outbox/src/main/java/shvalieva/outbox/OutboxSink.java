@@ -0,0 +1,11 @@
+package shvalieva.outbox;
+
+import java.util.List;
+
+/**
+ * Приёмник событий outbox (брокер, шина, HTTP-подписчик). Вызывается ретранслятором с пакетом
+ * в порядке записи; исключение оставляет пакет в outbox до следующей попытки — доставка «хотя бы один раз».
+ */
+public interface OutboxSink {
+    void publish(List<OutboxEvent> events);
+}
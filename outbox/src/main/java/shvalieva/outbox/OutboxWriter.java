@@ -0,0 +1,61 @@
+package shvalieva.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Запись событий в outbox. Вызывается только внутри транзакции изменения:
+ * событие и новое состояние фиксируются или откатываются вместе.
+ * После коммита поднимается флаг pending, по которому ретранслятор идёт в БД без ожидания полного опроса.
+ */
+@Component
+public class OutboxWriter {
+    private final OutboxEventRepository outboxRepository;
+    private final ObjectMapper objectMapper;
+    private final AtomicBoolean pending = new AtomicBoolean();
+
+    public OutboxWriter(OutboxEventRepository outboxRepository, ObjectMapper objectMapper) {
+        this.outboxRepository = outboxRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void append(String aggregateType, Object aggregateId, String eventType, Object payload) {
+        OutboxEvent event = new OutboxEvent();
+        event.setAggregateType(aggregateType);
+        event.setAggregateId(String.valueOf(aggregateId));
+        event.setEventType(eventType);
+        event.setCreatedAt(Instant.now());
+        try {
+            event.setPayload(objectMapper.writeValueAsString(payload));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Не удалось сериализовать событие " + eventType, e);
+        }
+        outboxRepository.save(event);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    pending.set(true);
+                }
+            });
+        }
+    }
+
+    public void markPending() {
+        pending.set(true);
+    }
+
+    // Сбрасывает флаг: записи, закоммиченные после этого вызова, поднимут его снова
+    public boolean takePending() {
+        return pending.getAndSet(false);
+    }
+}
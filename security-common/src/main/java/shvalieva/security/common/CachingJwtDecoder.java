@@ -0,0 +1,35 @@
+package shvalieva.security.common;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Блокирующий декодер поверх {@link VerifiedJwtCache}.
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+    private final JwtDecoder delegate;
+    private final VerifiedJwtCache cache;
+
+    public CachingJwtDecoder(JwtDecoder delegate, int maxEntries, Duration maxTtl, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.cache = new VerifiedJwtCache(maxEntries, maxTtl, meterRegistry);
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        String key = VerifiedJwtCache.key(token);
+        Instant now = Instant.now();
+        Jwt cached = cache.get(key, now);
+        if (cached != null) {
+            return cached;
+        }
+        Jwt jwt = delegate.decode(token);
+        cache.put(key, jwt, now);
+        return jwt;
+    }
+}
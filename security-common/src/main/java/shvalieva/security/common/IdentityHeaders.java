@@ -0,0 +1,59 @@
+package shvalieva.security.common;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Заголовки личности, которые шлюз передаёт сервисам после проверки JWT (доверенный внутренний участок).
+ * Подпись — HMAC-SHA256 общим внутренним секретом по sub, scope и exp: подделать личность или продлить
+ * срок без секрета нельзя, а проверка дешевле полного разбора токена.
+ */
+public final class IdentityHeaders {
+    public static final String SUBJECT = "X-Identity-Subject";
+    public static final String SCOPE = "X-Identity-Scope";
+    public static final String EXPIRES = "X-Identity-Expires";
+    public static final String SIGNATURE = "X-Identity-Signature";
+
+    // Заглушка из прежних конфигураций: известна всем, кто видел репозиторий
+    static final String PLACEHOLDER_SECRET = "dev-internal-secret-please-change";
+    // Не короче выхода HMAC-SHA256
+    static final int MIN_SECRET_BYTES = 32;
+
+    private IdentityHeaders() {}
+
+    /**
+     * Проверка секрета при включённом security.trusted-hop.enabled: заглушка или секрет короче 32 байт
+     * останавливают запуск, а не оставляют участок подделываемым.
+     */
+    public static String requireSecret(String secret) {
+        if (secret == null || PLACEHOLDER_SECRET.equals(secret)
+                || secret.getBytes(StandardCharsets.UTF_8).length < MIN_SECRET_BYTES) {
+            throw new IllegalArgumentException("security.trusted-hop.secret: при security.trusted-hop.enabled=true нужен "
+                    + "собственный секрет (TRUSTED_HOP_SECRET) не короче " + MIN_SECRET_BYTES + " байт");
+        }
+        return secret;
+    }
+
+    public static String sign(String secret, String subject, String scope, long expiresEpochSecond) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            byte[] signature = mac.doFinal((subject + '\n' + scope + '\n' + expiresEpochSecond)
+                    .getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Сравнение за постоянное время
+    public static boolean verify(String secret, String subject, String scope, long expiresEpochSecond, String signature) {
+        return MessageDigest.isEqual(
+                sign(secret, subject, scope, expiresEpochSecond).getBytes(StandardCharsets.US_ASCII),
+                signature.getBytes(StandardCharsets.US_ASCII));
+    }
+}
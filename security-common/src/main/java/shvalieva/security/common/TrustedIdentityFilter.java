@@ -0,0 +1,86 @@
+package shvalieva.security.common;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.web.BearerTokenResolver;
+import org.springframework.security.oauth2.server.resource.web.DefaultBearerTokenResolver;
+import org.springframework.security.web.context.RequestAttributeSecurityContextRepository;
+import org.springframework.security.web.context.SecurityContextRepository;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Принимает личность, уже проверенную шлюзом ({@link IdentityHeaders}): при верной подписи и неистёкшем сроке
+ * аутентификация строится из заголовков, и Bearer-токен повторно не проверяется. Без заголовков или с неверной
+ * подписью запрос идёт обычным путём через JwtDecoder. Для контроллеров это тот же Jwt с sub и scope.
+ */
+public class TrustedIdentityFilter extends OncePerRequestFilter {
+    private static final String TRUSTED_ATTRIBUTE = TrustedIdentityFilter.class.getName() + ".trusted";
+
+    private final String secret;
+    private final JwtAuthenticationConverter converter = new JwtAuthenticationConverter();
+    // как у BearerTokenAuthenticationFilter: контекст доступен и при асинхронном dispatch (ответы Mono)
+    private final SecurityContextRepository contextRepository = new RequestAttributeSecurityContextRepository();
+
+    public TrustedIdentityFilter(String secret) {
+        this.secret = IdentityHeaders.requireSecret(secret);
+    }
+
+    // Bearer-токен не разбирается, если личность уже принята из заголовков
+    public static BearerTokenResolver bearerTokenResolver() {
+        DefaultBearerTokenResolver delegate = new DefaultBearerTokenResolver();
+        return request -> request.getAttribute(TRUSTED_ATTRIBUTE) != null ? null : delegate.resolve(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String subject = request.getHeader(IdentityHeaders.SUBJECT);
+        String scope = request.getHeader(IdentityHeaders.SCOPE);
+        String expires = request.getHeader(IdentityHeaders.EXPIRES);
+        String signature = request.getHeader(IdentityHeaders.SIGNATURE);
+        if (subject != null && scope != null && expires != null && signature != null) {
+            Jwt jwt = trusted(subject, scope, expires, signature, request);
+            if (jwt != null) {
+                SecurityContext context = SecurityContextHolder.createEmptyContext();
+                context.setAuthentication(converter.convert(jwt));
+                SecurityContextHolder.setContext(context);
+                contextRepository.saveContext(context, request, response);
+                request.setAttribute(TRUSTED_ATTRIBUTE, Boolean.TRUE);
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    private Jwt trusted(String subject, String scope, String expires, String signature, HttpServletRequest request) {
+        long exp;
+        try {
+            exp = Long.parseLong(expires);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        Instant expiresAt = Instant.ofEpochSecond(exp);
+        if (!expiresAt.isAfter(Instant.now()) || !IdentityHeaders.verify(secret, subject, scope, exp, signature)) {
+            return null;
+        }
+        // Исходный токен сохраняется, если он пришёл вместе с заголовками (без проверки — её сделал шлюз)
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        String token = authorization != null && authorization.startsWith("Bearer ")
+                ? authorization.substring("Bearer ".length()) : "trusted-hop";
+        return Jwt.withTokenValue(token)
+                .header("alg", "none")
+                .subject(subject)
+                .claim("scope", scope)
+                .expiresAt(expiresAt)
+                .build();
+    }
+}
@@ -0,0 +1,84 @@
+package shvalieva.security.common;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кэш проверенных токенов: повторный запрос с тем же токеном не проверяет подпись и не разбирает claims заново.
+ * Ключ — SHA-256 токена, запись живёт до exp токена, но не дольше maxTtl. Отклонённые токены сюда не попадают.
+ * При переполнении сначала удаляются истёкшие записи, затем произвольные.
+ * Общий для блокирующего {@link CachingJwtDecoder} и реактивного декодера шлюза.
+ */
+public class VerifiedJwtCache {
+    private final int maxEntries;
+    private final Duration maxTtl;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+
+    private record Entry(Jwt jwt, Instant expiresAt) {}
+
+    public VerifiedJwtCache(int maxEntries, Duration maxTtl, MeterRegistry meterRegistry) {
+        this.maxEntries = maxEntries;
+        this.maxTtl = maxTtl;
+        this.hits = Counter.builder("security.jwt.cache").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("security.jwt.cache").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("security.jwt.cache.size", entries, Map::size).register(meterRegistry);
+    }
+
+    /** Проверенный токен из кэша или null; промах учитывается в метрике. */
+    public Jwt get(String key, Instant now) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.expiresAt().isAfter(now)) {
+                hits.increment();
+                return entry.jwt();
+            }
+            entries.remove(key, entry);
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(String key, Jwt jwt, Instant now) {
+        Instant expiresAt = now.plus(maxTtl);
+        if (jwt.getExpiresAt() != null && jwt.getExpiresAt().isBefore(expiresAt)) {
+            expiresAt = jwt.getExpiresAt();
+        }
+        if (entries.size() >= maxEntries) {
+            evict(now);
+        }
+        entries.put(key, new Entry(jwt, expiresAt));
+    }
+
+    private void evict(Instant now) {
+        entries.values().removeIf(e -> !e.expiresAt().isAfter(now));
+        Iterator<String> keys = entries.keySet().iterator();
+        // Освобождается десятая часть, чтобы не чистить кэш на каждом промахе
+        for (int excess = entries.size() - maxEntries * 9 / 10; excess > 0 && keys.hasNext(); excess--) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    public static String key(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
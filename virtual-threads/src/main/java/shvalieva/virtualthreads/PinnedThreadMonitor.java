@@ -0,0 +1,39 @@
+package shvalieva.virtualthreads;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Duration;
+
+/**
+ * Фиксирует через JFR случаи пиннинга длиннее 20 мс: метрика и предупреждение в лог.
+ */
+public class PinnedThreadMonitor implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(PinnedThreadMonitor.class);
+    private final RecordingStream stream = new RecordingStream();
+
+    public PinnedThreadMonitor(MeterRegistry meterRegistry) {
+        Counter pinned = Counter.builder("jvm.threads.virtual.pinned")
+                .description("Virtual threads pinned to a carrier for longer than 20ms")
+                .register(meterRegistry);
+        stream.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(20));
+        stream.onEvent("jdk.VirtualThreadPinned", event -> {
+            pinned.increment();
+            RecordedFrame top = event.getStackTrace() != null && !event.getStackTrace().getFrames().isEmpty()
+                    ? event.getStackTrace().getFrames().get(0) : null;
+            log.warn("Virtual thread pinned for {} ms at {}", event.getDuration().toMillis(),
+                    top != null ? top.getMethod().getType().getName() + "." + top.getMethod().getName() : "?");
+        });
+        stream.startAsync();
+    }
+
+    @Override
+    public void destroy() {
+        stream.close();
+    }
+}
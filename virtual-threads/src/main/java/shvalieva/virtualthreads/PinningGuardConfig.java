@@ -0,0 +1,54 @@
+package shvalieva.virtualthreads;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Защита от пиннинга в режиме виртуальных потоков (spring.threads.virtual.enabled=true).
+ * H2 и Hibernate блокируются внутри synchronized, что закрепляет виртуальный поток на несущем.
+ * Если размер пула не задан явно (spring.datasource.hikari.maximum-pool-size), он ограничивается числом
+ * несущих потоков минус один: остальные запросы ждут соединение в Hikari (это парковка, а не пиннинг),
+ * и планировщик не может быть занят целиком. Явно заданный размер не меняется.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class PinningGuardConfig {
+    private static final Logger log = LoggerFactory.getLogger(PinningGuardConfig.class);
+    static final String POOL_SIZE_PROPERTY = "spring.datasource.hikari.maximum-pool-size";
+
+    @Bean
+    public static BeanPostProcessor pinningSafeConnectionPool(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource ds && !environment.containsProperty(POOL_SIZE_PROPERTY)) {
+                    int limit = Math.max(1, carrierParallelism() - 1);
+                    if (ds.getMaximumPoolSize() > limit) {
+                        log.warn("Virtual threads: limiting '{}' pool size {} -> {} to avoid carrier pinning;"
+                                        + " set {} to override",
+                                beanName, ds.getMaximumPoolSize(), limit, POOL_SIZE_PROPERTY);
+                        ds.setMaximumPoolSize(limit);
+                    }
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public PinnedThreadMonitor pinnedThreadMonitor(MeterRegistry meterRegistry) {
+        return new PinnedThreadMonitor(meterRegistry);
+    }
+
+    private static int carrierParallelism() {
+        String configured = System.getProperty("jdk.virtualThreadScheduler.parallelism");
+        return configured != null ? Integer.parseInt(configured) : Runtime.getRuntime().availableProcessors();
+    }
+}